@@ -0,0 +1,67 @@
+package me.itangqi.waveloadingview;
+
+/**
+ * Water level transition that can be retargeted while it runs.
+ * <p>
+ * The level follows a cubic Hermite curve from its current value and velocity to the target,
+ * where it comes to rest. Starting from rest it leaves with twice the average speed, which
+ * makes the curve exactly 1 - (1 - t)², the classic {@code DecelerateInterpolator}. Retargeting
+ * mid-flight keeps both position and velocity continuous, so frequent updates do not jitter.
+ * Time is the fraction t of the transition, from 0 to 1.
+ */
+final class WaterLevelTween {
+    private float mFrom;
+    private float mTo;
+    // Velocity at t = 0, in level per whole transition.
+    private float mStartVelocity;
+    private boolean mRunning;
+
+    /**
+     * Start a transition to target.
+     *
+     * @param current The current level.
+     * @param t       Where the current transition is, if one is running.
+     */
+    void retarget(float current, float target, float t) {
+        float velocity = mRunning ? velocityAt(t) : 2 * (target - current);
+        mFrom = current;
+        mTo = target;
+        mStartVelocity = velocity;
+        mRunning = true;
+    }
+
+    void finish() {
+        mRunning = false;
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    float getTarget() {
+        return mTo;
+    }
+
+    float valueAt(float t) {
+        if (t >= 1) {
+            return mTo;
+        }
+        float t2 = t * t;
+        float t3 = t2 * t;
+        float h00 = 2 * t3 - 3 * t2 + 1;
+        float h10 = t3 - 2 * t2 + t;
+        float h01 = -2 * t3 + 3 * t2;
+        return h00 * mFrom + h10 * mStartVelocity + h01 * mTo;
+    }
+
+    float velocityAt(float t) {
+        if (t >= 1) {
+            return 0;
+        }
+        float t2 = t * t;
+        float d00 = 6 * t2 - 6 * t;
+        float d10 = 3 * t2 - 4 * t + 1;
+        float d01 = -6 * t2 + 6 * t;
+        return d00 * mFrom + d10 * mStartVelocity + d01 * mTo;
+    }
+}
@@ -0,0 +1,72 @@
+package me.itangqi.waveloadingview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * A single frame callback driving every WaveLoadingView in
+ * {@link WaveLoadingView.AnimationMode#SHARED_CLOCK} mode.
+ * <p>
+ * Each frame, every registered view derives its wave phase from the same frame timestamp, so
+ * views with the same duration stay in phase, and a view whose phase did not move is not
+ * invalidated. Only used on the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class WaveAnimationClock implements Choreographer.FrameCallback {
+    private static WaveAnimationClock sInstance;
+
+    private final ArrayList<WaveLoadingView> mViews = new ArrayList<>();
+    private boolean mFrameScheduled;
+
+    static WaveAnimationClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new WaveAnimationClock();
+        }
+        return sInstance;
+    }
+
+    private WaveAnimationClock() {
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    void register(WaveLoadingView view) {
+        if (!mViews.contains(view)) {
+            mViews.add(view);
+        }
+        if (!mFrameScheduled) {
+            Choreographer.getInstance().postFrameCallback(this);
+            mFrameScheduled = true;
+        }
+    }
+
+    void unregister(WaveLoadingView view) {
+        mViews.remove(view);
+        if (mViews.isEmpty() && mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mFrameScheduled = false;
+        }
+    }
+
+    boolean isRegistered(WaveLoadingView view) {
+        return mViews.contains(view);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        // Backwards, so a view may unregister itself from its callback.
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            mViews.get(i).onClockFrame(frameTimeNanos);
+        }
+        if (!mViews.isEmpty()) {
+            Choreographer.getInstance().postFrameCallback(this);
+            mFrameScheduled = true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Frames of one period of the wave, rendered once into a grid and played back with a single
+ * bitmap draw each. The frames are rendered one at a time, so that no single draw pass pays
+ * for the whole period.
+ * <p>
+ * While nothing but the wave shift changes, every period of the animation looks the same, so
+ * the atlas stays valid for one generation of the renderer. Layers whose speed is not a whole
+ * number do not repeat after one period, they jump back when the loop restarts.
+ */
+final class WaveAtlas {
+    // Largest atlas side, which hardware canvases can still upload as one texture.
+    private static final int MAX_ATLAS_SIZE = 2048;
+    private static final int MAX_ATLAS_BYTES = 8 * 1024 * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private Bitmap mBitmap;
+    private final Canvas mCanvas = new Canvas();
+    private final Rect mSource = new Rect();
+    private final Rect mDestination = new Rect();
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mColumns;
+    private int mFrameCount;
+    // Frames rendered so far, the atlas is complete at mFrameCount.
+    private int mBakedCount;
+    // Frames asked for, which the atlas may hold fewer of.
+    private int mRequestedFrames;
+    private int mGeneration;
+    private boolean mValid;
+
+    /**
+     * @return Whether the atlas holds all frames, for the given number of frames, of this
+     * generation and size.
+     */
+    boolean isComplete(WaveRenderer renderer, int frames) {
+        return matches(renderer, frames) && mBakedCount == mFrameCount;
+    }
+
+    /**
+     * @return Whether the atlas is being baked, or done, for the given number of frames, of
+     * this generation and size.
+     */
+    boolean matches(WaveRenderer renderer, int frames) {
+        return mValid && mGeneration == renderer.getGeneration() && mRequestedFrames == frames
+                && mFrameWidth == renderer.getWidth() && mFrameHeight == renderer.getHeight();
+    }
+
+    /**
+     * Start baking the frames of one period, dropping any earlier ones.
+     *
+     * @param frames Frames per period, fewer if they do not fit the size limits.
+     */
+    void begin(WaveRenderer renderer, int frames) {
+        int width = renderer.getWidth();
+        int height = renderer.getHeight();
+        int columns = Math.max(1, Math.min(frames, MAX_ATLAS_SIZE / width));
+        int maxRows = Math.max(1, MAX_ATLAS_SIZE / height);
+        int maxFrames = Math.max(1, MAX_ATLAS_BYTES / (width * height * BYTES_PER_PIXEL));
+        int count = Math.max(1, Math.min(frames, Math.min(columns * maxRows, maxFrames)));
+        columns = Math.min(columns, count);
+        int rows = (count + columns - 1) / columns;
+
+        if (mBitmap == null || mBitmap.getWidth() != columns * width || mBitmap.getHeight() != rows * height) {
+            // Let the old atlas go before allocating the new one.
+            mBitmap = null;
+            mBitmap = Bitmap.createBitmap(columns * width, rows * height, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(0);
+        }
+
+        mFrameWidth = width;
+        mFrameHeight = height;
+        mColumns = columns;
+        mFrameCount = count;
+        mBakedCount = 0;
+        mRequestedFrames = frames;
+        mGeneration = renderer.getGeneration();
+        mValid = true;
+    }
+
+    /**
+     * Render the next missing frame. The renderer's wave shift is restored afterwards.
+     */
+    void bakeNextFrame(WaveRenderer renderer) {
+        if (mBakedCount == mFrameCount) {
+            return;
+        }
+        int cycles = renderer.getWaveCycles();
+        float shift = renderer.getWaveShiftRatio();
+        mCanvas.setBitmap(mBitmap);
+        int save = mCanvas.save();
+        mCanvas.translate((mBakedCount % mColumns) * mFrameWidth, (mBakedCount / mColumns) * mFrameHeight);
+        mCanvas.clipRect(0, 0, mFrameWidth, mFrameHeight);
+        renderer.setWavePhase(0, (float) mBakedCount / mFrameCount);
+        renderer.draw(mCanvas);
+        mCanvas.restoreToCount(save);
+        mCanvas.setBitmap(null);
+        renderer.setWavePhase(cycles, shift);
+        mBakedCount++;
+    }
+
+    /**
+     * Draw the frame nearest to the wave shift.
+     */
+    void draw(Canvas canvas, float waveShiftRatio) {
+        int frame = Math.round(waveShiftRatio * mFrameCount) % mFrameCount;
+        int left = (frame % mColumns) * mFrameWidth;
+        int top = (frame / mColumns) * mFrameHeight;
+        mSource.set(left, top, left + mFrameWidth, top + mFrameHeight);
+        mDestination.set(0, 0, mFrameWidth, mFrameHeight);
+        canvas.drawBitmap(mBitmap, mSource, mDestination, null);
+    }
+
+    void release() {
+        mBitmap = null;
+        mValid = false;
+        mBakedCount = 0;
+    }
+}
@@ -0,0 +1,279 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import me.itangqi.waveloadingview.core.WaveRasterizer;
+
+/**
+ * Process-wide cache of rasterized wave bitmaps, shared by every WaveLoadingView.
+ * <p>
+ * The bitmaps are alpha masks, colored by the paint at draw time, so views with the same
+ * size and waves share one bitmap whatever their wave color. Entries are reference
+ * counted: an entry stays alive while at least one view holds it, and once released it is
+ * kept in an LRU list so that a view scrolled back on screen finds it again. Released entries
+ * are evicted, least recently used first, when they exceed the byte budget. Evicted bitmaps go
+ * to a {@link WaveBitmapPool}, where the next miss picks them up again.
+ */
+final class WaveBitmapCache {
+    private static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    private static WaveBitmapCache sInstance;
+
+    // All live entries, held or idle.
+    private final HashMap<Key, Entry> mEntries = new HashMap<>();
+    // Entries no view holds anymore, in access order (eldest first).
+    private final LinkedHashMap<Key, Entry> mIdleEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final WaveBitmapPool mPool = new WaveBitmapPool();
+    private int mIdleBytes;
+    private int mMaxBytes = DEFAULT_MAX_BYTES;
+    // Scratch mask for rasterizing, grown to the largest wave seen so far.
+    private byte[] mMask;
+    // Scratch for the rasterizer, and for the waves in pixels.
+    private float[] mSurfaces = new float[4];
+    private float[] mWaves = new float[12];
+
+    static synchronized WaveBitmapCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new WaveBitmapCache();
+        }
+        return sInstance;
+    }
+
+    private WaveBitmapCache() {
+    }
+
+    /**
+     * Get the wave bitmap for the given waves, rasterizing it on a miss.
+     * Every call must be balanced by {@link #release(Entry)}.
+     *
+     * @param waves Amplitude as a ratio of the height, phase in periods and alpha from 0 to 1
+     *              of every wave, from back to front. Not modified, and not kept.
+     */
+    synchronized Entry acquire(int width, int height, float[] waves) {
+        Key key = new Key(width, height, waves);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            key = new Key(width, height, waves.clone());
+            int stripTop = getStripTop(height, key.getMaxAmplitudeRatio());
+            entry = new Entry(key, rasterize(key, stripTop), stripTop);
+            mEntries.put(key, entry);
+        } else if (entry.mRefCount == 0) {
+            mIdleEntries.remove(key);
+            mIdleBytes -= entry.getByteCount();
+        }
+        entry.mRefCount++;
+        return entry;
+    }
+
+    synchronized void release(Entry entry) {
+        if (entry.mRefCount <= 0) {
+            return;
+        }
+        if (--entry.mRefCount == 0) {
+            mIdleEntries.put(entry.mKey, entry);
+            mIdleBytes += entry.getByteCount();
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Release an entry that is not expected to be used again, such as the previous size of a
+     * resizing view. If no one else holds it, its bitmap goes straight back to the pool so the
+     * next acquire can reuse it.
+     */
+    synchronized void releaseStale(Entry entry) {
+        if (entry.mRefCount <= 0) {
+            return;
+        }
+        if (--entry.mRefCount == 0) {
+            mEntries.remove(entry.mKey);
+            mPool.put(entry.mBitmap);
+        }
+    }
+
+    /**
+     * Set the budget for wave bitmaps no view currently holds.
+     *
+     * @param maxBytes The maximum size of idle bitmaps, in bytes. 0 releases them immediately.
+     */
+    synchronized void setMaxSize(int maxBytes) {
+        mMaxBytes = Math.max(0, maxBytes);
+        trimToSize(mMaxBytes);
+    }
+
+    synchronized int getMaxSize() {
+        return mMaxBytes;
+    }
+
+    synchronized int getIdleSize() {
+        return mIdleBytes;
+    }
+
+    synchronized void setPoolMaxSize(int maxBytes) {
+        mPool.setMaxSize(maxBytes);
+    }
+
+    synchronized int getPoolMaxSize() {
+        return mPool.getMaxSize();
+    }
+
+    synchronized int getPooledSize() {
+        return mPool.getPooledSize();
+    }
+
+    /**
+     * Drop every bitmap no view holds, idle and pooled alike.
+     */
+    synchronized void trimMemory() {
+        trimToSize(0);
+        mPool.clear();
+    }
+
+    private void trimToSize(int maxBytes) {
+        Iterator<Map.Entry<Key, Entry>> iterator = mIdleEntries.entrySet().iterator();
+        while (mIdleBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            mEntries.remove(eldest.mKey);
+            mIdleBytes -= eldest.getByteCount();
+            mPool.put(eldest.mBitmap);
+        }
+    }
+
+    /**
+     * The wave bitmap only stores the band holding the two sine curves. Rows above it are
+     * transparent and rows below it are solid, both of which the shader gets for free from
+     * {@link android.graphics.Shader.TileMode#CLAMP} by repeating the strip's edge rows.
+     */
+    private static int getStripTop(int height, float amplitudeRatio) {
+        float waterLevel = height * 0.5f;
+        float amplitude = height * amplitudeRatio;
+        // One extra row keeps the anti-aliased crests off the top edge.
+        return Math.max(0, (int) Math.floor(waterLevel - amplitude) - 1);
+    }
+
+    private static int getStripBottom(int height, float amplitudeRatio) {
+        float waterLevel = height * 0.5f;
+        float amplitude = height * amplitudeRatio;
+        // One extra row guarantees a fully covered bottom edge.
+        return Math.min(height, (int) Math.ceil(waterLevel + amplitude) + 2);
+    }
+
+    private Bitmap rasterize(Key key, int stripTop) {
+        final int width = key.mWidth;
+        final int height = key.mHeight;
+        int stripHeight = getStripBottom(height, key.getMaxAmplitudeRatio()) - stripTop;
+
+        Bitmap bitmap = mPool.get(width, stripHeight, Bitmap.Config.ALPHA_8);
+        int stride = bitmap.getRowBytes();
+        int size = stride * stripHeight;
+        if (mMask == null || mMask.length < size) {
+            mMask = new byte[size];
+        }
+        int count = key.mWaves.length / 3;
+        if (mSurfaces.length < count) {
+            mSurfaces = new float[count];
+            mWaves = new float[count * 3];
+        }
+        for (int i = 0; i < count * 3; i += 3) {
+            mWaves[i] = height * key.mWaves[i];
+            mWaves[i + 1] = key.mWaves[i + 1];
+            mWaves[i + 2] = key.mWaves[i + 2];
+        }
+        WaveRasterizer.rasterize(mMask, stride, width, stripTop, stripHeight,
+                height * 0.5f, mWaves, count, mSurfaces);
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(mMask, 0, size));
+        return bitmap;
+    }
+
+    /**
+     * A reference counted wave bitmap. Only valid between acquire and release.
+     */
+    static final class Entry {
+        private final Key mKey;
+        private final Bitmap mBitmap;
+        private final int mStripTop;
+        private int mRefCount;
+
+        private Entry(Key key, Bitmap bitmap, int stripTop) {
+            mKey = key;
+            mBitmap = bitmap;
+            mStripTop = stripTop;
+        }
+
+        Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        /**
+         * The row of the view the first row of the bitmap stands for.
+         */
+        int getStripTop() {
+            return mStripTop;
+        }
+
+        int getWidth() {
+            return mKey.mWidth;
+        }
+
+        int getHeight() {
+            return mKey.mHeight;
+        }
+
+        boolean matches(int width, int height, float[] waves) {
+            return mKey.mWidth == width && mKey.mHeight == height && Arrays.equals(mKey.mWaves, waves);
+        }
+
+        private int getByteCount() {
+            return WaveBitmapPool.getAllocationSize(mBitmap);
+        }
+    }
+
+    private static final class Key {
+        private final int mWidth;
+        private final int mHeight;
+        private final float[] mWaves;
+
+        private Key(int width, int height, float[] waves) {
+            mWidth = width;
+            mHeight = height;
+            mWaves = waves;
+        }
+
+        float getMaxAmplitudeRatio() {
+            float max = 0;
+            for (int i = 0; i < mWaves.length; i += 3) {
+                max = Math.max(max, mWaves[i]);
+            }
+            return max;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mWidth == other.mWidth && mHeight == other.mHeight
+                    && Arrays.equals(mWaves, other.mWaves);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + Arrays.hashCode(mWaves);
+            return result;
+        }
+    }
+}
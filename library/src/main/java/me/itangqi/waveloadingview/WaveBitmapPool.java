@@ -0,0 +1,173 @@
+package me.itangqi.waveloadingview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of wave bitmaps no cache entry uses anymore, bucketed by allocation size.
+ * <p>
+ * From KitKat on a pooled bitmap is {@link Bitmap#reconfigure(int, int, Bitmap.Config)
+ * reconfigured} to any size its allocation can hold, and new bitmaps are allocated with some
+ * headroom, so a view that grows a few pixels per frame keeps reusing the same memory.
+ * Before KitKat only bitmaps of the exact size and config are reused.
+ * <p>
+ * Not thread safe, {@link WaveBitmapCache} guards it.
+ */
+final class WaveBitmapPool {
+    private static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+    // Reusing a bitmap more than this many times too large wastes more than it saves.
+    private static final int MAX_SIZE_MULTIPLE = 2;
+    private static final int MIN_HEADROOM_BYTES = 4 * 1024;
+
+    // Pooled bitmaps by allocation size.
+    private final TreeMap<Integer, ArrayList<Bitmap>> mBuckets = new TreeMap<>();
+    // Pooled bitmaps in the order they were put, eldest first.
+    private final LinkedList<Bitmap> mOrder = new LinkedList<>();
+    private int mPooledBytes;
+    private int mMaxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * Get a bitmap of exactly the given size and config, reused from the pool if possible.
+     * Its content is undefined.
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return getReconfigured(width, height, config);
+        }
+        Bitmap bitmap = removeExact(width, height, config);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Hand a bitmap nobody draws anymore to the pool.
+     */
+    void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || getAllocationSize(bitmap) > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        int size = getAllocationSize(bitmap);
+        ArrayList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mOrder.addLast(bitmap);
+        mPooledBytes += size;
+        trimToSize(mMaxBytes);
+    }
+
+    void setMaxSize(int maxBytes) {
+        mMaxBytes = Math.max(0, maxBytes);
+        trimToSize(mMaxBytes);
+    }
+
+    int getMaxSize() {
+        return mMaxBytes;
+    }
+
+    int getPooledSize() {
+        return mPooledBytes;
+    }
+
+    void clear() {
+        trimToSize(0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private Bitmap getReconfigured(int width, int height, Bitmap.Config config) {
+        int rowBytes = getRowBytes(width, config);
+        int needed = rowBytes * height;
+        Map.Entry<Integer, ArrayList<Bitmap>> bucket = mBuckets.ceilingEntry(needed);
+        if (bucket != null && bucket.getKey() <= needed * MAX_SIZE_MULTIPLE) {
+            Bitmap bitmap = bucket.getValue().get(bucket.getValue().size() - 1);
+            remove(bitmap);
+            try {
+                bitmap.reconfigure(width, height, config);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                // The platform padded the rows more than getRowBytes expects.
+                bitmap.recycle();
+            }
+        }
+        // Leave room to grow, so the next few sizes of a resizing view fit in the same bitmap.
+        int headroom = Math.max(MIN_HEADROOM_BYTES, needed / 8);
+        int rows = height + (headroom + rowBytes - 1) / rowBytes;
+        Bitmap bitmap = Bitmap.createBitmap(width, rows, config);
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    private Bitmap removeExact(int width, int height, Bitmap.Config config) {
+        for (Bitmap bitmap : mOrder) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == config) {
+                remove(bitmap);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void remove(Bitmap bitmap) {
+        int size = getAllocationSize(bitmap);
+        ArrayList<Bitmap> bucket = mBuckets.get(size);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(size);
+        }
+        mOrder.remove(bitmap);
+        mPooledBytes -= size;
+    }
+
+    private void trimToSize(int maxBytes) {
+        Iterator<Bitmap> iterator = mOrder.iterator();
+        while (mPooledBytes > maxBytes && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+            int size = getAllocationSize(eldest);
+            ArrayList<Bitmap> bucket = mBuckets.get(size);
+            bucket.remove(eldest);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mPooledBytes -= size;
+            eldest.recycle();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int getAllocationSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Bytes per row the platform allocates, rows are padded to a multiple of 4 bytes.
+     * Reconfiguring needs the padded size, width * height alone is short for ALPHA_8.
+     */
+    private static int getRowBytes(int width, Bitmap.Config config) {
+        return (width * getBytesPerPixel(config) + 3) & ~3;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case ARGB_8888:
+                return 4;
+            default:
+                return 2;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package me.itangqi.waveloadingview;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.util.DisplayMetrics;
+
+/**
+ * Draws single frames of a wave gauge into bitmaps, for places a live view cannot go: app
+ * widgets, notification icons, shared images.
+ * <p>
+ * It draws exactly like {@link WaveLoadingView} but needs no view, context or animator: set the
+ * progress and the wave phase of the frame, then {@link #render(Bitmap)} it. Rendering again into
+ * the same bitmap costs one draw, the wave bitmaps are kept until {@link #release()}. A
+ * renderer must only be used by one thread at a time.
+ * <pre>
+ * WaveBitmapRenderer renderer = new WaveBitmapRenderer();
+ * renderer.setProgressValue(60);
+ * renderer.setCenterTitle("60%");
+ * remoteViews.setImageViewBitmap(R.id.gauge, renderer.render(mGaugeBitmap));
+ * </pre>
+ */
+public final class WaveBitmapRenderer {
+    private static final int DEFAULT_WAVE_PROGRESS_VALUE = 50;
+
+    private final WaveRenderer mRenderer = new WaveRenderer();
+    private final Canvas mCanvas = new Canvas();
+    private final DisplayMetrics mMetrics;
+    private int mProgressValue;
+
+    /**
+     * A renderer with the defaults of {@link WaveLoadingView}, sized for the system display.
+     */
+    public WaveBitmapRenderer() {
+        this(Resources.getSystem().getDisplayMetrics());
+    }
+
+    /**
+     * @param metrics Converts the sp values of the setters.
+     */
+    public WaveBitmapRenderer(DisplayMetrics metrics) {
+        mMetrics = metrics;
+        mRenderer.loadDefaultTitleSizes(metrics);
+        setProgressValue(DEFAULT_WAVE_PROGRESS_VALUE);
+    }
+
+    /**
+     * Draw one frame over the whole bitmap, which is cleared first.
+     *
+     * @param bitmap A mutable bitmap, reused across frames. Its size is the size of the gauge.
+     * @return bitmap, for chaining.
+     */
+    public Bitmap render(Bitmap bitmap) {
+        mRenderer.setSize(bitmap.getWidth(), bitmap.getHeight());
+        if (!mRenderer.hasWave()) {
+            // After release().
+            mRenderer.prepare();
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(bitmap);
+        mRenderer.draw(mCanvas);
+        mCanvas.setBitmap(null);
+        return bitmap;
+    }
+
+    /**
+     * Give back the wave bitmaps between infrequent renders. The next render takes them again.
+     */
+    public void release() {
+        mRenderer.release();
+    }
+
+    /**
+     * @return How many times the wave shaders were created, see {@link WaveRenderer#getShaderBuildCount()}.
+     */
+    int getShaderBuildCount() {
+        return mRenderer.getShaderBuildCount();
+    }
+
+    /**
+     * @param progress The water level, from 0 to 100.
+     */
+    public void setProgressValue(int progress) {
+        mProgressValue = progress;
+        mRenderer.setWaterLevelRatio((float) progress / 100);
+    }
+
+    public int getProgressValue() {
+        return mProgressValue;
+    }
+
+    /**
+     * @param waveShiftRatio Phase of the wave, from 0 to 1. Step it between renders to animate.
+     */
+    public void setWaveShiftRatio(float waveShiftRatio) {
+        mRenderer.setWaveShiftRatio(waveShiftRatio);
+    }
+
+    public float getWaveShiftRatio() {
+        return mRenderer.getWaveShiftRatio();
+    }
+
+    public void setShapeType(WaveLoadingView.ShapeType shapeType) {
+        mRenderer.setShapeType(shapeType.ordinal());
+    }
+
+    /**
+     * @param shape Belongs to this renderer from now on. Not null, {@link #setShapeType}
+     *              goes back to a built-in shape.
+     */
+    public void setShape(WaveShape shape) {
+        mRenderer.setShape(shape);
+    }
+
+    public void setWaveColor(int color) {
+        mRenderer.setWaveColor(color);
+    }
+
+    public void setWaveBgColor(int color) {
+        mRenderer.setWaveBgColor(color);
+    }
+
+    public void setWaveLayers(WaveLayer... layers) {
+        mRenderer.setWaveLayers(layers);
+    }
+
+    /**
+     * @see WaveLoadingView#setAmplitudeRatio(int)
+     */
+    public void setAmplitudeRatio(int amplitudeRatio) {
+        mRenderer.setAmplitudeRatio((float) amplitudeRatio / 1000);
+    }
+
+    /**
+     * @see WaveLoadingView#setWaveLengthRatio(float)
+     */
+    public void setWaveLengthRatio(float waveLengthRatio) {
+        if (waveLengthRatio <= 0) {
+            throw new IllegalArgumentException("waveLengthRatio must be > 0: " + waveLengthRatio);
+        }
+        mRenderer.setWaveLengthRatio(waveLengthRatio);
+    }
+
+    /**
+     * @param width Border width, in pixels, like {@link WaveLoadingView#setBorderWidth(float)}.
+     */
+    public void setBorderWidth(float width) {
+        mRenderer.setBorderWidth(width);
+    }
+
+    public void setBorderColor(int color) {
+        mRenderer.getBorderPaint().setColor(color);
+    }
+
+    public void setTopTitle(String topTitle) {
+        mRenderer.getTopTitle().setText(topTitle);
+    }
+
+    public void setCenterTitle(String centerTitle) {
+        mRenderer.getCenterTitle().setText(centerTitle);
+    }
+
+    public void setBottomTitle(String bottomTitle) {
+        mRenderer.getBottomTitle().setText(bottomTitle);
+    }
+
+    public void setTopTitleColor(int topTitleColor) {
+        mRenderer.getTopTitle().getPaint().setColor(topTitleColor);
+    }
+
+    public void setCenterTitleColor(int centerTitleColor) {
+        mRenderer.getCenterTitle().getPaint().setColor(centerTitleColor);
+    }
+
+    public void setBottomTitleColor(int bottomTitleColor) {
+        mRenderer.getBottomTitle().getPaint().setColor(bottomTitleColor);
+    }
+
+    /**
+     * @param topTitleSize Text size, in sp.
+     */
+    public void setTopTitleSize(float topTitleSize) {
+        mRenderer.getTopTitle().setTextSize(WaveRenderer.sp2px(mMetrics, topTitleSize));
+    }
+
+    /**
+     * @param centerTitleSize Text size, in sp.
+     */
+    public void setCenterTitleSize(float centerTitleSize) {
+        mRenderer.getCenterTitle().setTextSize(WaveRenderer.sp2px(mMetrics, centerTitleSize));
+    }
+
+    /**
+     * @param bottomTitleSize Text size, in sp.
+     */
+    public void setBottomTitleSize(float bottomTitleSize) {
+        mRenderer.getBottomTitle().setTextSize(WaveRenderer.sp2px(mMetrics, bottomTitleSize));
+    }
+}
@@ -0,0 +1,94 @@
+package me.itangqi.waveloadingview;
+
+/**
+ * One wave of a {@link WaveLoadingView}, see {@link WaveLoadingView#setWaveLayers(WaveLayer...)}.
+ * <p>
+ * Layers are drawn in order, the first one at the back. Consecutive layers that move together,
+ * with the same wave length, speed and color, are rasterized into one bitmap and drawn in a
+ * single pass. Every other layer animates through its own shader matrix, so nothing is
+ * rasterized again while the waves move.
+ */
+public final class WaveLayer {
+    private final float mAmplitudeScale;
+    private final float mWaveLengthRatio;
+    private final float mPhaseOffset;
+    private final float mSpeed;
+    private final boolean mInheritColor;
+    private final int mColor;
+    private final float mAlpha;
+
+    private WaveLayer(float amplitudeScale, float waveLengthRatio, float phaseOffset, float speed,
+                      boolean inheritColor, int color, float alpha) {
+        if (waveLengthRatio <= 0) {
+            throw new IllegalArgumentException("waveLengthRatio must be > 0: " + waveLengthRatio);
+        }
+        mAmplitudeScale = Math.max(0, amplitudeScale);
+        mWaveLengthRatio = waveLengthRatio;
+        mPhaseOffset = phaseOffset - (float) Math.floor(phaseOffset);
+        mSpeed = speed;
+        mInheritColor = inheritColor;
+        mColor = color;
+        mAlpha = Math.max(0, Math.min(1, alpha));
+    }
+
+    /**
+     * A layer in its own color.
+     *
+     * @param amplitudeScale  Amplitude relative to the view's amplitude ratio, 1 for the same.
+     * @param waveLengthRatio Wave length relative to the view's wave length, 1 for the same.
+     * @param phaseOffset     Offset along the wave, in periods.
+     * @param speed           Multiplier of the wave shift. Moves seamlessly as long as
+     *                        speed * 1000 is a whole number, e.g. 0.5 or 1.25.
+     * @param color           Color of the wave, with its alpha.
+     */
+    public static WaveLayer colored(float amplitudeScale, float waveLengthRatio, float phaseOffset,
+                                    float speed, int color) {
+        return new WaveLayer(amplitudeScale, waveLengthRatio, phaseOffset, speed, false, color, 1f);
+    }
+
+    /**
+     * A layer in the view's wave color, following {@link WaveLoadingView#setWaveColor(int)}.
+     *
+     * @param alpha Opacity relative to the wave color, from 0 to 1.
+     * @see #colored(float, float, float, float, int)
+     */
+    public static WaveLayer tinted(float amplitudeScale, float waveLengthRatio, float phaseOffset,
+                                   float speed, float alpha) {
+        return new WaveLayer(amplitudeScale, waveLengthRatio, phaseOffset, speed, true, 0, alpha);
+    }
+
+    public float getAmplitudeScale() {
+        return mAmplitudeScale;
+    }
+
+    public float getWaveLengthRatio() {
+        return mWaveLengthRatio;
+    }
+
+    public float getPhaseOffset() {
+        return mPhaseOffset;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return Whether the layer takes the view's wave color, see {@link #tinted}.
+     */
+    public boolean isTinted() {
+        return mInheritColor;
+    }
+
+    /**
+     * @param waveColor The view's wave color.
+     * @return The color the layer is drawn in, with its alpha.
+     */
+    public int resolveColor(int waveColor) {
+        if (!mInheritColor) {
+            return mColor;
+        }
+        int alpha = Math.round((waveColor >>> 24) * mAlpha);
+        return (alpha << 24) | (waveColor & 0x00FFFFFF);
+    }
+}
@@ -0,0 +1,821 @@
+package me.itangqi.waveloadingview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import me.itangqi.library.R;
+
+/**
+ * A wave gauge drawn on its own render thread, for screens whose UI thread is too busy to
+ * animate a {@link WaveLoadingView} smoothly.
+ * <p>
+ * It reads the same attributes and draws with the same renderer as WaveLoadingView. Setters can
+ * be called from the UI thread at any time: they only record the change, which the render thread
+ * picks up before its next frame. The render thread paces itself to the target frame rate and
+ * only runs while the surface exists.
+ * <p>
+ * The surface is a media overlay: it sits above the window's own content, so that a
+ * transparent background shows what is behind the view, but below other windows and views
+ * drawn over the window, such as dialogs and popups.
+ */
+public class WaveLoadingSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final int DEFAULT_WAVE_PROGRESS_VALUE = 50;
+    private static final long DEFAULT_ANIM_DURATION = 1000;
+    private static final long PROGRESS_ANIM_DURATION = 1000;
+    private static final int DEFAULT_FRAME_RATE = 60;
+    // Size when the parent leaves it open, as in a scroll view.
+    private static final float DEFAULT_SIZE_DP = 100;
+
+    // What changed since the render thread last looked.
+    private static final int CHANGED_PROGRESS = 1;
+    private static final int CHANGED_WAVE_COLOR = 1 << 1;
+    private static final int CHANGED_WAVE_BG_COLOR = 1 << 2;
+    private static final int CHANGED_AMPLITUDE = 1 << 3;
+    private static final int CHANGED_SHAPE = 1 << 4;
+    private static final int CHANGED_TITLES = 1 << 5;
+    private static final int CHANGED_SIZE = 1 << 6;
+    private static final int CHANGED_LAYERS = 1 << 7;
+    private static final int CHANGED_WAVE_LENGTH = 1 << 8;
+    private static final int CHANGED_BORDER = 1 << 9;
+
+    // State handed from the UI thread to the render thread. Guarded by mLock.
+    private final Object mLock = new Object();
+    private int mChanged;
+    private int mProgressValue = DEFAULT_WAVE_PROGRESS_VALUE;
+    private boolean mAnimateProgress;
+    private int mWaveColor;
+    private int mWaveBgColor;
+    private float mAmplitudeRatio;
+    private float mWaveLengthRatio;
+    private WaveLayer[] mLayers;
+    private int mShapeType;
+    // A custom shape, which takes precedence over mShapeType.
+    private WaveShape mShape;
+    private float mBorderWidth;
+    private int mBorderColor;
+    private String mTopTitle;
+    private String mCenterTitle;
+    private String mBottomTitle;
+    private int mTopTitleColor;
+    private int mCenterTitleColor;
+    private int mBottomTitleColor;
+    private float mTopTitleSize;
+    private float mCenterTitleSize;
+    private float mBottomTitleSize;
+    private int mWidth;
+    private int mHeight;
+    private long mAnimDuration = DEFAULT_ANIM_DURATION;
+    private int mTargetFps = DEFAULT_FRAME_RATE;
+    private boolean mPaused;
+
+    // Owned by the render thread while it runs, by the UI thread otherwise.
+    private final WaveRenderer mRenderer = new WaveRenderer();
+    private final WaterLevelTween mLevelTween = new WaterLevelTween();
+    private long mLevelTweenStart;
+    // Animation time of the wave, which only advances while the animation is not paused.
+    private long mWaveTime;
+
+    private RenderThread mRenderThread;
+
+    public WaveLoadingSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public WaveLoadingSurfaceView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public WaveLoadingSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        TypedArray attributes = context.obtainStyledAttributes(attrs, R.styleable.WaveLoadingView, defStyleAttr, 0);
+        mRenderer.loadAttributes(attributes, context.getResources().getDisplayMetrics());
+        mRenderer.setLayeredRendering(attributes.getBoolean(R.styleable.WaveLoadingView_wlv_layeredRendering, false));
+        int targetFps = attributes.getInt(R.styleable.WaveLoadingView_wlv_targetFrameRate, 0);
+        if (targetFps > 0) {
+            mTargetFps = targetFps;
+        }
+        mProgressValue = attributes.getInteger(R.styleable.WaveLoadingView_wlv_progressValue, DEFAULT_WAVE_PROGRESS_VALUE);
+        attributes.recycle();
+
+        mWaveColor = mRenderer.getWaveColor();
+        mWaveBgColor = mRenderer.getWaveBgColor();
+        mAmplitudeRatio = mRenderer.getAmplitudeRatio();
+        mWaveLengthRatio = mRenderer.getWaveLengthRatio();
+        mLayers = mRenderer.getWaveLayers();
+        mShapeType = mRenderer.getShapeType();
+        mBorderWidth = mRenderer.getBorderPaint().getStrokeWidth();
+        mBorderColor = mRenderer.getBorderPaint().getColor();
+        mTopTitle = mRenderer.getTopTitle().getText();
+        mCenterTitle = mRenderer.getCenterTitle().getText();
+        mBottomTitle = mRenderer.getBottomTitle().getText();
+        mTopTitleColor = mRenderer.getTopTitle().getPaint().getColor();
+        mCenterTitleColor = mRenderer.getCenterTitle().getPaint().getColor();
+        mBottomTitleColor = mRenderer.getBottomTitle().getPaint().getColor();
+        mTopTitleSize = mRenderer.getTopTitle().getPaint().getTextSize();
+        mCenterTitleSize = mRenderer.getCenterTitle().getPaint().getTextSize();
+        mBottomTitleSize = mRenderer.getBottomTitle().getPaint().getTextSize();
+        // Rise to the initial level, like WaveLoadingView.
+        mAnimateProgress = true;
+        mChanged = CHANGED_PROGRESS;
+
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+        setZOrderMediaOverlay(true);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        boolean widthOpen = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED;
+        boolean heightOpen = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.UNSPECIFIED;
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = MeasureSpec.getSize(heightMeasureSpec);
+        int defaultSize = WaveRenderer.dp2px(getResources().getDisplayMetrics(), DEFAULT_SIZE_DP);
+        // Same as WaveLoadingView: only shapes like the rectangle are not square.
+        if (!isSquareShape()) {
+            setMeasuredDimension(widthOpen ? Math.max(defaultSize, getSuggestedMinimumWidth()) : width,
+                    heightOpen ? Math.max(defaultSize, getSuggestedMinimumHeight()) : height);
+            return;
+        }
+        int size;
+        if (widthOpen && heightOpen) {
+            size = Math.max(defaultSize, Math.max(getSuggestedMinimumWidth(), getSuggestedMinimumHeight()));
+        } else if (widthOpen) {
+            // In a horizontal scroll view, as tall as allowed.
+            size = height;
+        } else if (heightOpen) {
+            // In a vertical scroll view, as wide as allowed.
+            size = width;
+        } else {
+            size = Math.min(width, height);
+        }
+        setMeasuredDimension(size, size);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (mLock) {
+            mWidth = width;
+            mHeight = height;
+            notifyChanged(CHANGED_SIZE);
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface is gone once this returns, so wait for the last frame to finish.
+        mRenderThread.quit();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mRenderThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+        mRenderer.release();
+    }
+
+    /**
+     * Water level increases from 0 to the value of WaveView.
+     *
+     * @param progress Default to be 50.
+     */
+    public void setProgressValue(int progress) {
+        setProgressValue(progress, true);
+    }
+
+    /**
+     * @param progress Default to be 50.
+     * @param animate  Whether to animate to the new level, or to snap to it.
+     */
+    public void setProgressValue(int progress, boolean animate) {
+        synchronized (mLock) {
+            mProgressValue = progress;
+            mAnimateProgress = animate;
+            notifyChanged(CHANGED_PROGRESS);
+        }
+    }
+
+    public int getProgressValue() {
+        synchronized (mLock) {
+            return mProgressValue;
+        }
+    }
+
+    public void setWaveColor(int color) {
+        synchronized (mLock) {
+            mWaveColor = color;
+            notifyChanged(CHANGED_WAVE_COLOR);
+        }
+    }
+
+    public int getWaveColor() {
+        synchronized (mLock) {
+            return mWaveColor;
+        }
+    }
+
+    public void setWaveBgColor(int color) {
+        synchronized (mLock) {
+            mWaveBgColor = color;
+            notifyChanged(CHANGED_WAVE_BG_COLOR);
+        }
+    }
+
+    public int getWaveBgColor() {
+        synchronized (mLock) {
+            return mWaveBgColor;
+        }
+    }
+
+    /**
+     * Set vertical size of wave according to amplitudeRatio.
+     *
+     * @param amplitudeRatio Default to be 0.05. Result of amplitudeRatio + waterLevelRatio should be less than 1.
+     */
+    public void setAmplitudeRatio(int amplitudeRatio) {
+        synchronized (mLock) {
+            mAmplitudeRatio = (float) amplitudeRatio / 1000;
+            notifyChanged(CHANGED_AMPLITUDE);
+        }
+    }
+
+    public float getAmplitudeRatio() {
+        synchronized (mLock) {
+            return mAmplitudeRatio;
+        }
+    }
+
+    /**
+     * @see WaveLoadingView#setWaveLengthRatio(float)
+     */
+    public void setWaveLengthRatio(float waveLengthRatio) {
+        if (waveLengthRatio <= 0) {
+            throw new IllegalArgumentException("waveLengthRatio must be > 0: " + waveLengthRatio);
+        }
+        synchronized (mLock) {
+            mWaveLengthRatio = waveLengthRatio;
+            notifyChanged(CHANGED_WAVE_LENGTH);
+        }
+    }
+
+    public float getWaveLengthRatio() {
+        synchronized (mLock) {
+            return mWaveLengthRatio;
+        }
+    }
+
+    /**
+     * @see WaveLoadingView#setWaveLayers(WaveLayer...)
+     */
+    public void setWaveLayers(WaveLayer... layers) {
+        synchronized (mLock) {
+            mLayers = layers == null || layers.length == 0 ? WaveRenderer.getDefaultWaveLayers() : layers.clone();
+            notifyChanged(CHANGED_LAYERS);
+        }
+    }
+
+    public WaveLayer[] getWaveLayers() {
+        synchronized (mLock) {
+            return mLayers.clone();
+        }
+    }
+
+    /**
+     * @param width Width of the border, in pixels.
+     */
+    public void setBorderWidth(float width) {
+        synchronized (mLock) {
+            mBorderWidth = width;
+            notifyChanged(CHANGED_BORDER);
+        }
+    }
+
+    public float getBorderWidth() {
+        synchronized (mLock) {
+            return mBorderWidth;
+        }
+    }
+
+    public void setBorderColor(int color) {
+        synchronized (mLock) {
+            mBorderColor = color;
+            notifyChanged(CHANGED_BORDER);
+        }
+    }
+
+    public int getBorderColor() {
+        synchronized (mLock) {
+            return mBorderColor;
+        }
+    }
+
+    public void setShapeType(WaveLoadingView.ShapeType shapeType) {
+        synchronized (mLock) {
+            mShapeType = shapeType.ordinal();
+            mShape = null;
+            notifyChanged(CHANGED_SHAPE);
+        }
+        requestLayout();
+    }
+
+    public int getShapeType() {
+        synchronized (mLock) {
+            return mShape != null ? WaveRenderer.SHAPE_TYPE_CUSTOM : mShapeType;
+        }
+    }
+
+    /**
+     * @param shape Belongs to the render thread from now on, it must not be touched again.
+     * @see WaveLoadingView#setShape(WaveShape)
+     */
+    public void setShape(WaveShape shape) {
+        if (shape == null) {
+            throw new IllegalArgumentException("shape must not be null, use setShapeType instead");
+        }
+        synchronized (mLock) {
+            mShape = shape;
+            notifyChanged(CHANGED_SHAPE);
+        }
+        requestLayout();
+    }
+
+    private boolean isSquareShape() {
+        synchronized (mLock) {
+            return mShape != null ? mShape.isSquare() : mShapeType != WaveLoadingView.ShapeType.RECTANGLE.ordinal();
+        }
+    }
+
+    public void setTopTitle(String topTitle) {
+        synchronized (mLock) {
+            mTopTitle = topTitle;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public String getTopTitle() {
+        synchronized (mLock) {
+            return mTopTitle;
+        }
+    }
+
+    public void setCenterTitle(String centerTitle) {
+        synchronized (mLock) {
+            mCenterTitle = centerTitle;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public String getCenterTitle() {
+        synchronized (mLock) {
+            return mCenterTitle;
+        }
+    }
+
+    public void setBottomTitle(String bottomTitle) {
+        synchronized (mLock) {
+            mBottomTitle = bottomTitle;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public String getBottomTitle() {
+        synchronized (mLock) {
+            return mBottomTitle;
+        }
+    }
+
+    public void setTopTitleColor(int topTitleColor) {
+        synchronized (mLock) {
+            mTopTitleColor = topTitleColor;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public int getTopTitleColor() {
+        synchronized (mLock) {
+            return mTopTitleColor;
+        }
+    }
+
+    public void setCenterTitleColor(int centerTitleColor) {
+        synchronized (mLock) {
+            mCenterTitleColor = centerTitleColor;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public int getCenterTitleColor() {
+        synchronized (mLock) {
+            return mCenterTitleColor;
+        }
+    }
+
+    public void setBottomTitleColor(int bottomTitleColor) {
+        synchronized (mLock) {
+            mBottomTitleColor = bottomTitleColor;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    public int getBottomTitleColor() {
+        synchronized (mLock) {
+            return mBottomTitleColor;
+        }
+    }
+
+    /**
+     * @param topTitleSize Text size of the title, in sp.
+     */
+    public void setTopTitleSize(float topTitleSize) {
+        float size = sp2px(topTitleSize);
+        synchronized (mLock) {
+            mTopTitleSize = size;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    /**
+     * @return Text size of the title, in pixels.
+     */
+    public float getTopTitleSize() {
+        synchronized (mLock) {
+            return mTopTitleSize;
+        }
+    }
+
+    /**
+     * @param centerTitleSize Text size of the title, in sp.
+     */
+    public void setCenterTitleSize(float centerTitleSize) {
+        float size = sp2px(centerTitleSize);
+        synchronized (mLock) {
+            mCenterTitleSize = size;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    /**
+     * @return Text size of the title, in pixels.
+     */
+    public float getCenterTitleSize() {
+        synchronized (mLock) {
+            return mCenterTitleSize;
+        }
+    }
+
+    /**
+     * @param bottomTitleSize Text size of the title, in sp.
+     */
+    public void setBottomTitleSize(float bottomTitleSize) {
+        float size = sp2px(bottomTitleSize);
+        synchronized (mLock) {
+            mBottomTitleSize = size;
+            notifyChanged(CHANGED_TITLES);
+        }
+    }
+
+    /**
+     * @return Text size of the title, in pixels.
+     */
+    public float getBottomTitleSize() {
+        synchronized (mLock) {
+            return mBottomTitleSize;
+        }
+    }
+
+    /**
+     * Sets the length of the animation. The default duration is 1000 milliseconds.
+     *
+     * @param duration The length of the animation, in milliseconds.
+     */
+    public void setAnimDuration(long duration) {
+        synchronized (mLock) {
+            mAnimDuration = duration;
+        }
+    }
+
+    /**
+     * @param fps Frames per second the render thread draws at. Default to be 60.
+     */
+    public void setTargetFrameRate(int fps) {
+        synchronized (mLock) {
+            mTargetFps = fps > 0 ? fps : DEFAULT_FRAME_RATE;
+        }
+    }
+
+    public int getTargetFrameRate() {
+        synchronized (mLock) {
+            return mTargetFps;
+        }
+    }
+
+    /**
+     * Hold the wave still. The render thread then sleeps until something changes.
+     */
+    public void pauseAnimation() {
+        synchronized (mLock) {
+            mPaused = true;
+        }
+    }
+
+    public void resumeAnimation() {
+        synchronized (mLock) {
+            mPaused = false;
+            mLock.notifyAll();
+        }
+    }
+
+    private int sp2px(float sp) {
+        return WaveRenderer.sp2px(getResources().getDisplayMetrics(), sp);
+    }
+
+    // Must hold mLock.
+    private void notifyChanged(int changed) {
+        mChanged |= changed;
+        mLock.notifyAll();
+    }
+
+    /**
+     * The guarded state the render thread took for its next frame. Copied under mLock, then
+     * applied to the renderer without it, so that setters never wait for a rasterization.
+     */
+    private static final class PendingChanges {
+        int mProgressValue;
+        boolean mAnimateProgress;
+        int mWaveColor;
+        int mWaveBgColor;
+        float mAmplitudeRatio;
+        float mWaveLengthRatio;
+        WaveLayer[] mLayers;
+        int mShapeType;
+        WaveShape mShape;
+        float mBorderWidth;
+        int mBorderColor;
+        String mTopTitle;
+        String mCenterTitle;
+        String mBottomTitle;
+        int mTopTitleColor;
+        int mCenterTitleColor;
+        int mBottomTitleColor;
+        float mTopTitleSize;
+        float mCenterTitleSize;
+        float mBottomTitleSize;
+        int mWidth;
+        int mHeight;
+    }
+
+    private final class RenderThread extends Thread {
+        private final SurfaceHolder mHolder;
+        // Guarded by mLock.
+        private boolean mQuit;
+        // Only used by the render thread.
+        private final PendingChanges mPending = new PendingChanges();
+
+        RenderThread(SurfaceHolder holder) {
+            super("WaveRenderThread");
+            mHolder = holder;
+        }
+
+        void quit() {
+            synchronized (mLock) {
+                mQuit = true;
+                mLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            mRenderer.prepare();
+            long lastFrameTime = SystemClock.uptimeMillis();
+            while (true) {
+                long frameInterval;
+                long duration;
+                boolean paused;
+                int changed;
+                synchronized (mLock) {
+                    if (mQuit) {
+                        return;
+                    }
+                    frameInterval = 1000 / mTargetFps;
+                    duration = Math.max(1, mAnimDuration);
+                    paused = mPaused;
+                    changed = mChanged;
+                    mChanged = 0;
+                    if (changed != 0) {
+                        takeChanges(changed);
+                    }
+                }
+                if (changed != 0) {
+                    applyChanges(changed);
+                }
+
+                long frameTime = SystemClock.uptimeMillis();
+                if (!paused) {
+                    mWaveTime += frameTime - lastFrameTime;
+                }
+                lastFrameTime = frameTime;
+                mRenderer.setWaveShiftRatio((float) (mWaveTime % duration) / duration);
+                boolean levelMoving = updateWaterLevel(frameTime);
+                drawFrame();
+
+                synchronized (mLock) {
+                    if (paused && !levelMoving) {
+                        // Nothing moves, sleep until a setter or resumeAnimation wakes us up.
+                        while (!mQuit && mChanged == 0 && mPaused) {
+                            waitForChange(0);
+                        }
+                    } else {
+                        long wait = frameTime + frameInterval - SystemClock.uptimeMillis();
+                        if (wait > 0 && !mQuit && mChanged == 0) {
+                            waitForChange(wait);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Must hold mLock.
+        private void waitForChange(long timeout) {
+            try {
+                mLock.wait(timeout);
+            } catch (InterruptedException e) {
+                mQuit = true;
+            }
+        }
+
+        // Must hold mLock, so the changes are read consistently.
+        private void takeChanges(int changed) {
+            PendingChanges pending = mPending;
+            if ((changed & CHANGED_LAYERS) != 0) {
+                pending.mLayers = mLayers;
+            }
+            if ((changed & CHANGED_SIZE) != 0) {
+                pending.mWidth = mWidth;
+                pending.mHeight = mHeight;
+            }
+            if ((changed & CHANGED_WAVE_COLOR) != 0) {
+                pending.mWaveColor = mWaveColor;
+            }
+            if ((changed & CHANGED_WAVE_BG_COLOR) != 0) {
+                pending.mWaveBgColor = mWaveBgColor;
+            }
+            if ((changed & CHANGED_AMPLITUDE) != 0) {
+                pending.mAmplitudeRatio = mAmplitudeRatio;
+            }
+            if ((changed & CHANGED_WAVE_LENGTH) != 0) {
+                pending.mWaveLengthRatio = mWaveLengthRatio;
+            }
+            if ((changed & CHANGED_BORDER) != 0) {
+                pending.mBorderWidth = mBorderWidth;
+                pending.mBorderColor = mBorderColor;
+            }
+            if ((changed & CHANGED_SHAPE) != 0) {
+                pending.mShape = mShape;
+                pending.mShapeType = mShapeType;
+            }
+            if ((changed & CHANGED_TITLES) != 0) {
+                pending.mTopTitle = mTopTitle;
+                pending.mCenterTitle = mCenterTitle;
+                pending.mBottomTitle = mBottomTitle;
+                pending.mTopTitleColor = mTopTitleColor;
+                pending.mCenterTitleColor = mCenterTitleColor;
+                pending.mBottomTitleColor = mBottomTitleColor;
+                pending.mTopTitleSize = mTopTitleSize;
+                pending.mCenterTitleSize = mCenterTitleSize;
+                pending.mBottomTitleSize = mBottomTitleSize;
+            }
+            if ((changed & CHANGED_PROGRESS) != 0) {
+                pending.mProgressValue = mProgressValue;
+                pending.mAnimateProgress = mAnimateProgress;
+            }
+        }
+
+        // Without mLock: rasterizing the wave bitmaps may take a while.
+        private void applyChanges(int changed) {
+            PendingChanges pending = mPending;
+            // Before the size, so a new size only acquires the bitmaps of the new layers.
+            if ((changed & CHANGED_LAYERS) != 0) {
+                mRenderer.setWaveLayers(pending.mLayers);
+            }
+            if ((changed & CHANGED_SIZE) != 0) {
+                mRenderer.setSize(pending.mWidth, pending.mHeight);
+            }
+            if ((changed & CHANGED_WAVE_COLOR) != 0) {
+                mRenderer.setWaveColor(pending.mWaveColor);
+            }
+            if ((changed & CHANGED_WAVE_BG_COLOR) != 0) {
+                mRenderer.setWaveBgColor(pending.mWaveBgColor);
+            }
+            if ((changed & CHANGED_AMPLITUDE) != 0) {
+                mRenderer.setAmplitudeRatio(pending.mAmplitudeRatio);
+            }
+            if ((changed & CHANGED_WAVE_LENGTH) != 0) {
+                mRenderer.setWaveLengthRatio(pending.mWaveLengthRatio);
+            }
+            if ((changed & CHANGED_BORDER) != 0) {
+                mRenderer.setBorderWidth(pending.mBorderWidth);
+                mRenderer.getBorderPaint().setColor(pending.mBorderColor);
+                mRenderer.invalidateStaticLayers();
+            }
+            if ((changed & CHANGED_SHAPE) != 0) {
+                if (pending.mShape != null) {
+                    mRenderer.setShape(pending.mShape);
+                } else {
+                    mRenderer.setShapeType(pending.mShapeType);
+                }
+            }
+            if ((changed & CHANGED_TITLES) != 0) {
+                mRenderer.getTopTitle().setText(pending.mTopTitle);
+                mRenderer.getCenterTitle().setText(pending.mCenterTitle);
+                mRenderer.getBottomTitle().setText(pending.mBottomTitle);
+                mRenderer.getTopTitle().getPaint().setColor(pending.mTopTitleColor);
+                mRenderer.getCenterTitle().getPaint().setColor(pending.mCenterTitleColor);
+                mRenderer.getBottomTitle().getPaint().setColor(pending.mBottomTitleColor);
+                mRenderer.getTopTitle().setTextSize(pending.mTopTitleSize);
+                mRenderer.getCenterTitle().setTextSize(pending.mCenterTitleSize);
+                mRenderer.getBottomTitle().setTextSize(pending.mBottomTitleSize);
+                mRenderer.invalidateStaticLayers();
+            }
+            if ((changed & CHANGED_PROGRESS) != 0) {
+                float target = (float) pending.mProgressValue / 100;
+                long now = SystemClock.uptimeMillis();
+                if (pending.mAnimateProgress) {
+                    mLevelTween.retarget(mRenderer.getWaterLevelRatio(), target, getLevelTweenFraction(now));
+                    mLevelTweenStart = now;
+                } else {
+                    mLevelTween.finish();
+                    mRenderer.setWaterLevelRatio(target);
+                }
+            }
+        }
+
+        /**
+         * @return Whether the water level is still moving.
+         */
+        private boolean updateWaterLevel(long frameTime) {
+            if (!mLevelTween.isRunning()) {
+                return false;
+            }
+            float t = getLevelTweenFraction(frameTime);
+            mRenderer.setWaterLevelRatio(mLevelTween.valueAt(t));
+            if (t >= 1) {
+                mLevelTween.finish();
+                return false;
+            }
+            return true;
+        }
+
+        private float getLevelTweenFraction(long time) {
+            return Math.min(1f, (float) (time - mLevelTweenStart) / PROGRESS_ANIM_DURATION);
+        }
+
+        @TargetApi(Build.VERSION_CODES.M)
+        private void drawFrame() {
+            Surface surface = mHolder.getSurface();
+            boolean hardware = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+            Canvas canvas;
+            try {
+                canvas = hardware ? surface.lockHardwareCanvas() : mHolder.lockCanvas();
+            } catch (IllegalStateException e) {
+                // The surface is being torn down, surfaceDestroyed stops us right after.
+                return;
+            }
+            if (canvas == null) {
+                return;
+            }
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                mRenderer.draw(canvas);
+            } finally {
+                if (hardware) {
+                    surface.unlockCanvasAndPost(canvas);
+                } else {
+                    mHolder.unlockCanvasAndPost(canvas);
+                }
+            }
+        }
+    }
+}
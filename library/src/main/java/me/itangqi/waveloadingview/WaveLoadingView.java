@@ -1,65 +1,42 @@
 package me.itangqi.waveloadingview;
 
-import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Bitmap;
-import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.Point;
-import android.graphics.RectF;
-import android.graphics.Shader;
+import android.graphics.Rect;
 import android.os.Build;
-import android.text.TextUtils;
+import android.os.PowerManager;
+import android.provider.Settings;
 import android.util.AttributeSet;
+import android.util.Property;
 import android.view.View;
-import android.view.animation.DecelerateInterpolator;
+import android.view.ViewTreeObserver;
 import android.view.animation.LinearInterpolator;
 
 import me.itangqi.library.R;
 
 public class WaveLoadingView extends View {
-    /**
-     * +------------------------+
-     * | wave length - 波长      |__________
-     * |   /\          |   /\   |  |
-     * |  /  \         |  /  \  | amplitude - 振幅
-     * | /    \        | /    \ |  |
-     * |/      \       |/      \|__|_______
-     * |        \      /        |  |
-     * |         \    /         |  |
-     * |          \  /          |  |
-     * |           \/           | water level - 水位
-     * |                        |  |
-     * |                        |  |
-     * +------------------------+__|_______
-     */
-    private static final float DEFAULT_AMPLITUDE_RATIO = 0.1f;
-    private static final float DEFAULT_AMPLITUDE_VALUE = 50.0f;
-    private static final float DEFAULT_WATER_LEVEL_RATIO = 0.5f;
-    private static final float DEFAULT_WAVE_LENGTH_RATIO = 1.0f;
-    private static final float DEFAULT_WAVE_SHIFT_RATIO = 0.0f;
     private static final int DEFAULT_WAVE_PROGRESS_VALUE = 50;
-    private static final int DEFAULT_WAVE_COLOR = Color.parseColor("#212121");
-    private static final int DEFAULT_WAVE_BACKGROUND_COLOR = Color.parseColor("#00000000");
-    private static final int DEFAULT_TITLE_COLOR = Color.parseColor("#212121");
-    private static final int DEFAULT_STROKE_COLOR = Color.TRANSPARENT;
-    private static final float DEFAULT_BORDER_WIDTH = 0;
-    private static final float DEFAULT_TITLE_STROKE_WIDTH = 0;
-    // This is incorrect/not recommended by Joshua Bloch in his book Effective Java (2nd ed).
-    private static final int DEFAULT_WAVE_SHAPE = ShapeType.CIRCLE.ordinal();
-    private static final int DEFAULT_TRIANGLE_DIRECTION = TriangleDirection.NORTH.ordinal();
-    private static final int DEFAULT_ROUND_RECTANGLE_X_AND_Y = 30;
-    private static final float DEFAULT_TITLE_TOP_SIZE = 18.0f;
-    private static final float DEFAULT_TITLE_CENTER_SIZE = 22.0f;
-    private static final float DEFAULT_TITLE_BOTTOM_SIZE = 18.0f;
+    private static final long DEFAULT_ANIM_DURATION = 1000;
+    private static final long PROGRESS_ANIM_DURATION = 1000;
+    // Adaptive frame rate, judged by how late animation frames arrive. One display frame.
+    private static final long VSYNC_MILLIS = 16;
+    // Longer gaps between frames are pauses, not slow frames.
+    private static final long MAX_FRAME_GAP_MILLIS = 250;
+    // Frames averaged before the degradation level may change.
+    private static final int ADAPT_WINDOW_FRAMES = 60;
+    // Good windows in a row needed to step back up, doubled each time that proves too early.
+    private static final int MIN_STEP_UP_WINDOWS = 2;
+    private static final int MAX_STEP_UP_WINDOWS = 32;
+    private static final int ADAPTIVE_BASE_FPS = 60;
+    private static final int ADAPTIVE_MIN_FPS = 15;
+    // Degradation levels: full rate, half rate, half rate without the back wave.
+    private static final int DEGRADE_NONE = 0;
+    private static final int DEGRADE_FRAME_RATE = 1;
+    private static final int DEGRADE_BACK_WAVE = 2;
 
     public enum ShapeType {
         TRIANGLE,
@@ -75,51 +52,119 @@ public class WaveLoadingView extends View {
         WEST
     }
 
+    public enum AnimationMode {
+        /**
+         * Every view runs its own animator.
+         */
+        ANIMATOR,
+        /**
+         * All views share a single frame callback and derive their phase from its frame time.
+         */
+        SHARED_CLOCK,
+        /**
+         * The view derives its phase from the frame time while drawing and schedules its next
+         * frame itself, without any animator object.
+         */
+        FRAME_TIME
+    }
+
+    // Typed property, so the animator does not have to look up the setter by reflection.
+    private static final Property<WaveLoadingView, Float> WAVE_SHIFT_RATIO =
+            new Property<WaveLoadingView, Float>(Float.class, "waveShiftRatio") {
+                @Override
+                public Float get(WaveLoadingView view) {
+                    return view.getWaveShiftRatio();
+                }
+
+                @Override
+                public void set(WaveLoadingView view, Float value) {
+                    view.onAnimatedWaveShift(value);
+                }
+            };
+
     // Dynamic Properties.
     private int mCanvasSize;
     private int mCanvasHeight;
     private int mCanvasWidth;
-    private float mAmplitudeRatio;
-    private int mWaveBgColor;
-    private int mWaveColor;
-    private int mShapeType;
-    private int mTriangleDirection;
-    private int mRoundRectangleXY;
 
     // Properties.
-    private String mTopTitle;
-    private String mCenterTitle;
-    private String mBottomTitle;
-    private float mDefaultWaterLevel;
-    private float mWaterLevelRatio = 1f;
-    private float mWaveShiftRatio = DEFAULT_WAVE_SHIFT_RATIO;
     private int mProgressValue = DEFAULT_WAVE_PROGRESS_VALUE;
-    private boolean mIsRoundRectangle;
-
-    // Object used to draw.
-    // Shader containing repeated waves.
-    private BitmapShader mWaveShader;
-    private Bitmap bitmapBuffer;
-    // Shader matrix.
-    private Matrix mShaderMatrix;
-    // Paint to draw wave.
-    private Paint mWavePaint;
-    //Paint to draw waveBackground.
-    private Paint mWaveBgPaint;
-    // Paint to draw border.
-    private Paint mBorderPaint;
-    // Point to draw title.
-    private Paint mTopTitlePaint;
-    private Paint mBottomTitlePaint;
-    private Paint mCenterTitlePaint;
-
-    private Paint mTopTitleStrokePaint;
-    private Paint mBottomTitleStrokePaint;
-    private Paint mCenterTitleStrokePaint;
+
+    // Draws the shape, the wave and the titles. The view measures, animates and invalidates.
+    private final WaveRenderer mRenderer = new WaveRenderer();
 
     // Animation.
     private ObjectAnimator waveShiftAnim;
-    private AnimatorSet mAnimatorSet;
+    private AnimationMode mAnimationMode = AnimationMode.ANIMATOR;
+    private long mAnimDuration = DEFAULT_ANIM_DURATION;
+    // State of the time based modes, SHARED_CLOCK and FRAME_TIME.
+    private boolean mTimeAnimating;
+    private boolean mTimePaused;
+    // Animation time at which the wave shift was 0, in FRAME_TIME mode.
+    private long mPhaseStartTime;
+    // Water level transition, retargeted by setProgressValue and driven by a single animator.
+    private ValueAnimator mProgressAnim;
+    private final WaterLevelTween mLevelTween = new WaterLevelTween();
+    // Physics mode for level changes, stepped once per frame while the water moves.
+    private boolean mSloshing;
+    private final WaveSlosh mSlosh = new WaveSlosh();
+    private boolean mSloshScheduled;
+    private final Runnable mSloshFrame = new Runnable() {
+        @Override
+        public void run() {
+            stepSlosh();
+        }
+    };
+
+    // Visibility. The wave stops animating while the view cannot be seen.
+    private boolean mAttached;
+    private boolean mWindowVisible;
+    // Whether the animation is held because the view is not visible, or must render statically.
+    private boolean mSuspended;
+    // Whether the wave shift animator was paused by mSuspended rather than by the user.
+    private boolean mWaveShiftAnimSuspended;
+    // Play time to restore the wave shift animator to, before KitKat.
+    private long mSuspendedPlayTime;
+    private final Rect mVisibleRect = new Rect();
+    private final VisibilityListener mVisibilityListener = new VisibilityListener();
+
+    // Frame rate. 0 follows the display.
+    private int mTargetFps;
+    private boolean mAdaptiveFrameRate;
+    // Animation time the wave shift was last applied at.
+    private long mLastShiftFrameTime;
+    // Adaptive mode: time of the last animation frame, and how late frames were this window.
+    private long mLastFrameTime;
+    private long mLateMillis;
+    private int mWindowFrames;
+    // Adaptive mode: good windows seen, needed, and whether the last step was up.
+    private int mGoodWindows;
+    private int mStepUpWindows = MIN_STEP_UP_WINDOWS;
+    private boolean mSteppedUp;
+    private int mDegradeLevel = DEGRADE_NONE;
+    // Whether the system asked for no animations, through power save or the animator scale.
+    private boolean mStaticRender;
+    // Clock and frame scheduling of the view itself, replaced by tests.
+    private WaveTimeSource mTimeSource = WaveTimeSource.SYSTEM;
+    // Invalidates the view for the next capped frame, in FRAME_TIME mode.
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onAnimationFrame(Math.max(VSYNC_MILLIS, getFrameIntervalMillis()));
+            invalidateWaveBand();
+        }
+    };
+
+    // Baked playback: frames per period, 0 to draw every frame live.
+    private int mBakedFrames;
+    private final WaveAtlas mAtlas = new WaveAtlas();
+    // Generation of the renderer at the last live frame, to only bake once it holds still.
+    private int mLiveGeneration = -1;
+
+    // Dirty region. The band around the water surface last invalidated, and scratch for the next.
+    private final Rect mWaveBand = new Rect();
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mTmpRect = new Rect();
 
     private Context mContext;
 
@@ -139,235 +184,131 @@ public class WaveLoadingView extends View {
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr) {
         mContext = context;
-        // Init Wave.
-        mShaderMatrix = new Matrix();
-        mWavePaint = new Paint();
-        // The ANTI_ALIAS_FLAG bit AntiAliasing smooths out the edges of what is being drawn,
-        // but is has no impact on the interior of the shape.
-        mWavePaint.setAntiAlias(true);
-        mWaveBgPaint = new Paint();
-        mWaveBgPaint.setAntiAlias(true);
-        // Init Animation
-        initAnimation();
-
         // Load the styled attributes and set their properties
         TypedArray attributes = context.obtainStyledAttributes(attrs, R.styleable.WaveLoadingView, defStyleAttr, 0);
 
-        // Init ShapeType
-        mShapeType = attributes.getInteger(R.styleable.WaveLoadingView_wlv_shapeType, DEFAULT_WAVE_SHAPE);
+        // Init AnimationMode
+        setAnimationMode(AnimationMode.values()[attributes.getInt(R.styleable.WaveLoadingView_wlv_animationMode,
+                AnimationMode.ANIMATOR.ordinal())]);
+
+        // Init Layered rendering
+        mRenderer.setLayeredRendering(attributes.getBoolean(R.styleable.WaveLoadingView_wlv_layeredRendering, false));
+
+        // Init Frame rate
+        mTargetFps = Math.max(0, attributes.getInt(R.styleable.WaveLoadingView_wlv_targetFrameRate, 0));
+        mAdaptiveFrameRate = attributes.getBoolean(R.styleable.WaveLoadingView_wlv_adaptiveFrameRate, false);
 
-        // Init Wave
-        mWaveColor = attributes.getColor(R.styleable.WaveLoadingView_wlv_waveColor, DEFAULT_WAVE_COLOR);
-        mWaveBgColor = attributes.getColor(R.styleable.WaveLoadingView_wlv_wave_background_Color, DEFAULT_WAVE_BACKGROUND_COLOR);
+        // Init Shape, Wave, Border and Titles
+        mRenderer.loadAttributes(attributes, context.getResources().getDisplayMetrics());
 
-        mWaveBgPaint.setColor(mWaveBgColor);
+        // Init Baked frames
+        mBakedFrames = Math.max(0, attributes.getInt(R.styleable.WaveLoadingView_wlv_bakedFrames, 0));
 
-        // Init AmplitudeRatio
-        float amplitudeRatioAttr = attributes.getFloat(R.styleable.WaveLoadingView_wlv_waveAmplitude, DEFAULT_AMPLITUDE_VALUE) / 1000;
-        mAmplitudeRatio = (amplitudeRatioAttr > DEFAULT_AMPLITUDE_RATIO) ? DEFAULT_AMPLITUDE_RATIO : amplitudeRatioAttr;
+        // Init Sloshing
+        mSloshing = attributes.getBoolean(R.styleable.WaveLoadingView_wlv_sloshing, false);
 
         // Init Progress
         mProgressValue = attributes.getInteger(R.styleable.WaveLoadingView_wlv_progressValue, DEFAULT_WAVE_PROGRESS_VALUE);
         setProgressValue(mProgressValue);
 
-        // Init RoundRectangle
-        mIsRoundRectangle = attributes.getBoolean(R.styleable.WaveLoadingView_wlv_round_rectangle, false);
-        mRoundRectangleXY = attributes.getInteger(R.styleable.WaveLoadingView_wlv_round_rectangle_x_and_y, DEFAULT_ROUND_RECTANGLE_X_AND_Y);
-
-        // Init Triangle direction
-        mTriangleDirection = attributes.getInteger(R.styleable.WaveLoadingView_wlv_triangle_direction, DEFAULT_TRIANGLE_DIRECTION);
-
-        // Init Border
-        mBorderPaint = new Paint();
-        mBorderPaint.setAntiAlias(true);
-        mBorderPaint.setStyle(Paint.Style.STROKE);
-        mBorderPaint.setStrokeWidth(attributes.getDimension(R.styleable.WaveLoadingView_wlv_borderWidth, dp2px(DEFAULT_BORDER_WIDTH)));
-        mBorderPaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_borderColor, DEFAULT_WAVE_COLOR));
-
-        // Init Top Title
-        mTopTitlePaint = new Paint();
-        mTopTitlePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleTopColor, DEFAULT_TITLE_COLOR));
-        mTopTitlePaint.setStyle(Paint.Style.FILL);
-        mTopTitlePaint.setAntiAlias(true);
-        mTopTitlePaint.setTextSize(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleTopSize, sp2px(DEFAULT_TITLE_TOP_SIZE)));
-
-        mTopTitleStrokePaint = new Paint();
-        mTopTitleStrokePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleTopStrokeColor, DEFAULT_STROKE_COLOR));
-        mTopTitleStrokePaint.setStrokeWidth(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleTopStrokeWidth, dp2px(DEFAULT_TITLE_STROKE_WIDTH)));
-        mTopTitleStrokePaint.setStyle(Paint.Style.STROKE);
-        mTopTitleStrokePaint.setAntiAlias(true);
-        mTopTitleStrokePaint.setTextSize(mTopTitlePaint.getTextSize());
-
-        mTopTitle = attributes.getString(R.styleable.WaveLoadingView_wlv_titleTop);
-
-        // Init Center Title
-        mCenterTitlePaint = new Paint();
-        mCenterTitlePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleCenterColor, DEFAULT_TITLE_COLOR));
-        mCenterTitlePaint.setStyle(Paint.Style.FILL);
-        mCenterTitlePaint.setAntiAlias(true);
-        mCenterTitlePaint.setTextSize(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleCenterSize, sp2px(DEFAULT_TITLE_CENTER_SIZE)));
-
-        mCenterTitleStrokePaint = new Paint();
-        mCenterTitleStrokePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleCenterStrokeColor, DEFAULT_STROKE_COLOR));
-        mCenterTitleStrokePaint.setStrokeWidth(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleCenterStrokeWidth, dp2px(DEFAULT_TITLE_STROKE_WIDTH)));
-        mCenterTitleStrokePaint.setStyle(Paint.Style.STROKE);
-        mCenterTitleStrokePaint.setAntiAlias(true);
-        mCenterTitleStrokePaint.setTextSize(mCenterTitlePaint.getTextSize());
-
-        mCenterTitle = attributes.getString(R.styleable.WaveLoadingView_wlv_titleCenter);
-
-        // Init Bottom Title
-        mBottomTitlePaint = new Paint();
-        mBottomTitlePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleBottomColor, DEFAULT_TITLE_COLOR));
-        mBottomTitlePaint.setStyle(Paint.Style.FILL);
-        mBottomTitlePaint.setAntiAlias(true);
-        mBottomTitlePaint.setTextSize(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleBottomSize, sp2px(DEFAULT_TITLE_BOTTOM_SIZE)));
-
-        mBottomTitleStrokePaint = new Paint();
-        mBottomTitleStrokePaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_titleBottomStrokeColor, DEFAULT_STROKE_COLOR));
-        mBottomTitleStrokePaint.setStrokeWidth(attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleBottomStrokeWidth, dp2px(DEFAULT_TITLE_STROKE_WIDTH)));
-        mBottomTitleStrokePaint.setStyle(Paint.Style.STROKE);
-        mBottomTitleStrokePaint.setAntiAlias(true);
-        mBottomTitleStrokePaint.setTextSize(mBottomTitlePaint.getTextSize());
-
-        mBottomTitle = attributes.getString(R.styleable.WaveLoadingView_wlv_titleBottom);
-
         attributes.recycle();
     }
 
     @Override
     public void onDraw(Canvas canvas) {
+        if (isFramePhaseRunning()) {
+            updateFramePhase();
+            scheduleNextFrame();
+        }
         mCanvasSize = canvas.getWidth();
         if (canvas.getHeight() < mCanvasSize) {
             mCanvasSize = canvas.getHeight();
         }
-        // Draw Wave.
-        // Modify paint shader according to mShowWave state.
-        if (mWaveShader != null) {
-            // First call after mShowWave, assign it to our paint.
-            if (mWavePaint.getShader() == null) {
-                mWavePaint.setShader(mWaveShader);
-            }
+        if (!drawBaked(canvas)) {
+            mRenderer.draw(canvas);
+        }
+    }
 
-            // Sacle shader according to waveLengthRatio and amplitudeRatio.
-            // This decides the size(waveLengthRatio for width, amplitudeRatio for height) of waves.
-            mShaderMatrix.setScale(1, mAmplitudeRatio / DEFAULT_AMPLITUDE_RATIO, 0, mDefaultWaterLevel);
-            // Translate shader according to waveShiftRatio and waterLevelRatio.
-            // This decides the start position(waveShiftRatio for x, waterLevelRatio for y) of waves.
-            mShaderMatrix.postTranslate(mWaveShiftRatio * getWidth(),
-                    (DEFAULT_WATER_LEVEL_RATIO - mWaterLevelRatio) * getHeight());
-
-            // Assign matrix to invalidate the shader.
-            mWaveShader.setLocalMatrix(mShaderMatrix);
-
-            // Get borderWidth.
-            float borderWidth = mBorderPaint.getStrokeWidth();
-
-            // The default type is triangle.
-            switch (mShapeType) {
-                // Draw triangle
-                case 0:
-                    // Currently does not support the border settings
-                    Point start = new Point(0, getHeight());
-                    Path triangle = getEquilateralTriangle(start, getWidth(), getHeight(), mTriangleDirection);
-                    canvas.drawPath(triangle, mWaveBgPaint);
-                    canvas.drawPath(triangle, mWavePaint);
-                    break;
-                // Draw circle
-                case 1:
-                    if (borderWidth > 0) {
-                        canvas.drawCircle(getWidth() / 2f, getHeight() / 2f,
-                                (getWidth() - borderWidth) / 2f - 1f, mBorderPaint);
-                    }
+    /**
+     * Play the animation back from pre-rendered frames: each frame is then a single bitmap draw,
+     * whatever the shape, layers and titles. The frames are rendered again after any change
+     * other than the wave moving, once the gauge holds still for a frame, so a moving water
+     * level is drawn live. They are rendered one per draw pass, and the wave is drawn live until
+     * all of them are. Meant for indeterminate spinners on low-end devices.
+     * <p>
+     * The frames take up to 8MB, fewer are baked for large views.
+     *
+     * @param frames Frames per period of the wave, e.g. 24. 0, the default, draws live.
+     */
+    public void setBakedFrames(int frames) {
+        mBakedFrames = Math.max(0, frames);
+        if (mBakedFrames == 0) {
+            mAtlas.release();
+        }
+        invalidate();
+    }
 
-                    float radius = getWidth() / 2f - borderWidth;
-                    // Draw background
-                    canvas.drawCircle(getWidth() / 2f, getHeight() / 2f, radius, mWaveBgPaint);
-                    canvas.drawCircle(getWidth() / 2f, getHeight() / 2f, radius, mWavePaint);
-                    break;
-                // Draw square
-                case 2:
-                    if (borderWidth > 0) {
-                        canvas.drawRect(
-                                borderWidth / 2f,
-                                borderWidth / 2f,
-                                getWidth() - borderWidth / 2f - 0.5f,
-                                getHeight() - borderWidth / 2f - 0.5f,
-                                mBorderPaint);
-                    }
+    public int getBakedFrames() {
+        return mBakedFrames;
+    }
 
-                    canvas.drawRect(borderWidth, borderWidth, getWidth() - borderWidth,
-                            getHeight() - borderWidth, mWaveBgPaint);
-                    canvas.drawRect(borderWidth, borderWidth, getWidth() - borderWidth,
-                            getHeight() - borderWidth, mWavePaint);
-                    break;
-                // Draw rectangle
-                case 3:
-                    if (mIsRoundRectangle) {
-                        if (borderWidth > 0) {
-                            RectF rect = new RectF(borderWidth / 2f, borderWidth / 2f, getWidth() - borderWidth / 2f - 0.5f, getHeight() - borderWidth / 2f - 0.5f);
-                            canvas.drawRoundRect(rect, mRoundRectangleXY, mRoundRectangleXY, mBorderPaint);
-                            canvas.drawRoundRect(rect, mRoundRectangleXY, mRoundRectangleXY, mWaveBgPaint);
-                            canvas.drawRoundRect(rect, mRoundRectangleXY, mRoundRectangleXY, mWavePaint);
-                        } else {
-                            RectF rect = new RectF(0, 0, getWidth(), getHeight());
-                            canvas.drawRoundRect(rect, mRoundRectangleXY, mRoundRectangleXY, mWaveBgPaint);
-                            canvas.drawRoundRect(rect, mRoundRectangleXY, mRoundRectangleXY, mWavePaint);
-                        }
-                    } else {
-                        if (borderWidth > 0) {
-                            canvas.drawRect(borderWidth / 2f, borderWidth / 2f, getWidth() - borderWidth / 2f - 0.5f, getHeight() - borderWidth / 2f - 0.5f, mWaveBgPaint);
-                            canvas.drawRect(borderWidth / 2f, borderWidth / 2f, getWidth() - borderWidth / 2f - 0.5f, getHeight() - borderWidth / 2f - 0.5f, mWavePaint);
-                        } else {
-                            canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mWaveBgPaint);
-                            canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mWavePaint);
-                        }
-                    }
-                    break;
-                default:
-                    break;
-            }
+    /**
+     * @return Whether the frame was drawn from the atlas.
+     */
+    private boolean drawBaked(Canvas canvas) {
+        if (mBakedFrames == 0 || !mRenderer.hasWave()) {
+            return false;
+        }
+        if (mAtlas.isComplete(mRenderer, mBakedFrames)) {
+            mAtlas.draw(canvas, mRenderer.getWaveShiftRatio());
+            return true;
+        }
+        int generation = mRenderer.getGeneration();
+        if (generation != mLiveGeneration) {
+            // Still changing, baking now would likely be wasted.
+            mLiveGeneration = generation;
+            return false;
+        }
+        if (!mAtlas.matches(mRenderer, mBakedFrames)) {
+            mAtlas.begin(mRenderer, mBakedFrames);
+        }
+        // One frame per pass keeps every draw short, this one is still drawn live.
+        mAtlas.bakeNextFrame(mRenderer);
+        return false;
+    }
 
-            // I know, the code written here is very shit.
-            if (!TextUtils.isEmpty(mTopTitle)) {
-                float top = mTopTitlePaint.measureText(mTopTitle);
-                // Draw the stroke of top text
-                canvas.drawText(mTopTitle, (getWidth() - top) / 2,
-                        getHeight() * 2 / 10.0f, mTopTitleStrokePaint);
-                // Draw the top text
-                canvas.drawText(mTopTitle, (getWidth() - top) / 2,
-                        getHeight() * 2 / 10.0f, mTopTitlePaint);
-            }
+    /**
+     * Draw the border and the titles from cached layers, recorded again only when one of their
+     * setters is called. Each frame then only issues the wave fill and two layer replays,
+     * instead of up to eight draw calls. The layers are display lists, or
+     * offscreen bitmaps on hardware accelerated canvases before Marshmallow.
+     *
+     * @param layered Default to be false.
+     */
+    public void setLayeredRendering(boolean layered) {
+        if (mRenderer.isLayeredRendering() != layered) {
+            mRenderer.setLayeredRendering(layered);
+            invalidate();
+        }
+    }
 
-            if (!TextUtils.isEmpty(mCenterTitle)) {
-                float middle = mCenterTitlePaint.measureText(mCenterTitle);
-                // Draw the stroke of centered text
-                canvas.drawText(mCenterTitle, (getWidth() - middle) / 2,
-                        getHeight() / 2 - ((mCenterTitleStrokePaint.descent() + mCenterTitleStrokePaint.ascent()) / 2), mCenterTitleStrokePaint);
-                // Draw the centered text
-                canvas.drawText(mCenterTitle, (getWidth() - middle) / 2,
-                        getHeight() / 2 - ((mCenterTitlePaint.descent() + mCenterTitlePaint.ascent()) / 2), mCenterTitlePaint);
-            }
+    public boolean isLayeredRendering() {
+        return mRenderer.isLayeredRendering();
+    }
 
-            if (!TextUtils.isEmpty(mBottomTitle)) {
-                float bottom = mBottomTitlePaint.measureText(mBottomTitle);
-                // Draw the stroke of bottom text
-                canvas.drawText(mBottomTitle, (getWidth() - bottom) / 2,
-                        getHeight() * 8 / 10.0f - ((mBottomTitleStrokePaint.descent() + mBottomTitleStrokePaint.ascent()) / 2), mBottomTitleStrokePaint);
-                // Draw the bottom text
-                canvas.drawText(mBottomTitle, (getWidth() - bottom) / 2,
-                        getHeight() * 8 / 10.0f - ((mBottomTitlePaint.descent() + mBottomTitlePaint.ascent()) / 2), mBottomTitlePaint);
-            }
-        } else {
-            mWavePaint.setShader(null);
-        }
+    /**
+     * For setters of anything the static layers hold.
+     */
+    private void invalidateStaticLayers() {
+        mRenderer.invalidateStaticLayers();
+        invalidate();
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        // If shapType is rectangle
-        if (getShapeType() == 3) {
+        // If the shape is not square, like the rectangle
+        if (!mRenderer.getShape().isSquare()) {
             mCanvasWidth = w;
             mCanvasHeight = h;
         } else {
@@ -375,69 +316,15 @@ public class WaveLoadingView extends View {
             if (h < mCanvasSize)
                 mCanvasSize = h;
         }
-        updateWaveShader();
-    }
-
-    private void updateWaveShader() {
-        // IllegalArgumentException: width and height must be > 0 while loading Bitmap from View
-        // http://stackoverflow.com/questions/17605662/illegalargumentexception-width-and-height-must-be-0-while-loading-bitmap-from
-        if (bitmapBuffer == null || haveBoundsChanged()) {
-            if (bitmapBuffer != null)
-                bitmapBuffer.recycle();
-            int width = getMeasuredWidth();
-            int height = getMeasuredHeight();
-            if (width > 0 && height > 0) {
-                double defaultAngularFrequency = 2.0f * Math.PI / DEFAULT_WAVE_LENGTH_RATIO / width;
-                float defaultAmplitude = height * DEFAULT_AMPLITUDE_RATIO;
-                mDefaultWaterLevel = height * DEFAULT_WATER_LEVEL_RATIO;
-                float defaultWaveLength = width;
-
-                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                Canvas canvas = new Canvas(bitmap);
-
-                Paint wavePaint = new Paint();
-                wavePaint.setStrokeWidth(2);
-                wavePaint.setAntiAlias(true);
-
-                // Draw default waves into the bitmap.
-                // y=Asin(ωx+φ)+h
-                final int endX = width + 1;
-                final int endY = height + 1;
-
-                float[] waveY = new float[endX];
-
-                wavePaint.setColor(adjustAlpha(mWaveColor, 0.3f));
-                for (int beginX = 0; beginX < endX; beginX++) {
-                    double wx = beginX * defaultAngularFrequency;
-                    float beginY = (float) (mDefaultWaterLevel + defaultAmplitude * Math.sin(wx));
-                    canvas.drawLine(beginX, beginY, beginX, endY, wavePaint);
-                    waveY[beginX] = beginY;
-                }
-
-                wavePaint.setColor(mWaveColor);
-                final int wave2Shift = (int) (defaultWaveLength / 4);
-                for (int beginX = 0; beginX < endX; beginX++) {
-                    canvas.drawLine(beginX, waveY[(beginX + wave2Shift) % endX], beginX, endY, wavePaint);
-                }
-
-                // Use the bitamp to create the shader.
-                mWaveShader = new BitmapShader(bitmap, Shader.TileMode.REPEAT, Shader.TileMode.CLAMP);
-                this.mWavePaint.setShader(mWaveShader);
-            }
-        }
-    }
-
-    private boolean haveBoundsChanged() {
-        return getMeasuredWidth() != bitmapBuffer.getWidth() ||
-                getMeasuredHeight() != bitmapBuffer.getHeight();
+        mRenderer.setSize(w, h);
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int width = measureWidth(widthMeasureSpec);
         int height = measureHeight(heightMeasureSpec);
-        // If shapType is rectangle
-        if (getShapeType() == 3) {
+        // If the shape is not square, like the rectangle
+        if (!mRenderer.getShape().isSquare()) {
             setMeasuredDimension(width, height);
         } else {
             int imageSize = (width < height) ? width : height;
@@ -484,54 +371,271 @@ public class WaveLoadingView extends View {
 
 
     public void setWaveBgColor(int color) {
-        this.mWaveBgColor = color;
-        mWaveBgPaint.setColor(this.mWaveBgColor);
-        updateWaveShader();
+        mRenderer.setWaveBgColor(color);
         invalidate();
     }
 
     public int getWaveBgColor() {
-        return mWaveBgColor;
+        return mRenderer.getWaveBgColor();
     }
 
     public void setWaveColor(int color) {
-        mWaveColor = color;
-        // Need to recreate shader when color changed ?
-//        mWaveShader = null;
-        updateWaveShader();
+        mRenderer.setWaveColor(color);
         invalidate();
     }
 
     public int getWaveColor() {
-        return mWaveColor;
+        return mRenderer.getWaveColor();
     }
 
     public void setBorderWidth(float width) {
-        mBorderPaint.setStrokeWidth(width);
+        mRenderer.setBorderWidth(width);
         invalidate();
     }
 
     public float getBorderWidth() {
-        return mBorderPaint.getStrokeWidth();
+        return mRenderer.getBorderPaint().getStrokeWidth();
     }
 
     public void setBorderColor(int color) {
-        mBorderPaint.setColor(color);
-        updateWaveShader();
-        invalidate();
+        mRenderer.getBorderPaint().setColor(color);
+        invalidateStaticLayers();
     }
 
     public int getBorderColor() {
-        return mBorderPaint.getColor();
+        return mRenderer.getBorderPaint().getColor();
     }
 
     public void setShapeType(ShapeType shapeType) {
-        mShapeType = shapeType.ordinal();
+        mRenderer.setShapeType(shapeType.ordinal());
         invalidate();
     }
 
+    /**
+     * @return The ordinal of the {@link ShapeType}, or -1 for a shape set by {@link #setShape(WaveShape)}.
+     */
     public int getShapeType() {
-        return mShapeType;
+        return mRenderer.getShapeType();
+    }
+
+    /**
+     * Fill a custom silhouette, see {@link WaveShapes} for the built-in ones. Its geometry is
+     * computed once per size, not per frame.
+     *
+     * @param shape Belongs to this view from now on. Not null, {@link #setShapeType(ShapeType)}
+     *              goes back to a built-in shape.
+     */
+    public void setShape(WaveShape shape) {
+        mRenderer.setShape(shape);
+        requestLayout();
+        invalidate();
+    }
+
+    public WaveShape getShape() {
+        return mRenderer.getShape();
+    }
+
+    /**
+     * Change several properties at once, doing the work they need only once: the shape geometry,
+     * the wave bitmaps and the paints are each rebuilt at most once, and the view is invalidated
+     * once, when {@link Editor#apply()} is called.
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Theme the gauge with the properties the style sets, in one batch.
+     */
+    public void applyStyle(WaveStyle style) {
+        edit().setStyle(style).apply();
+    }
+
+    private void apply(Editor editor) {
+        WaveStyle style = editor.mStyle.build();
+        mRenderer.beginBatch();
+        style.applyTo(mRenderer);
+        if (editor.mShape != null) {
+            mRenderer.setShape(editor.mShape);
+        }
+        if ((editor.mChanged & Editor.CHANGED_AMPLITUDE) != 0) {
+            mRenderer.setAmplitudeRatio(editor.mAmplitudeRatio);
+        }
+        if ((editor.mChanged & Editor.CHANGED_WAVE_LENGTH) != 0) {
+            mRenderer.setWaveLengthRatio(editor.mWaveLengthRatio);
+        }
+        if ((editor.mChanged & Editor.CHANGED_TOP_TITLE) != 0) {
+            mRenderer.getTopTitle().setText(editor.mTopTitle);
+        }
+        if ((editor.mChanged & Editor.CHANGED_CENTER_TITLE) != 0) {
+            mRenderer.getCenterTitle().setText(editor.mCenterTitle);
+        }
+        if ((editor.mChanged & Editor.CHANGED_BOTTOM_TITLE) != 0) {
+            mRenderer.getBottomTitle().setText(editor.mBottomTitle);
+        }
+        mRenderer.endBatch();
+        // The shape and the border width redo the geometry, which already records the layers again.
+        if (style.has(WaveStyle.BORDER_COLOR | WaveStyle.TOP_TITLE_COLOR | WaveStyle.CENTER_TITLE_COLOR
+                | WaveStyle.BOTTOM_TITLE_COLOR) || (editor.mChanged & Editor.CHANGED_TITLES) != 0) {
+            mRenderer.invalidateStaticLayers();
+        }
+        if (editor.mShape != null || style.has(WaveStyle.SHAPE_TYPE)) {
+            requestLayout();
+        }
+        if ((editor.mChanged & Editor.CHANGED_PROGRESS) != 0) {
+            setProgressValue(editor.mProgressValue);
+        }
+        invalidate();
+    }
+
+    /**
+     * Collects changes to apply to the view in one batch, see {@link #edit()}.
+     */
+    public final class Editor {
+        private static final int CHANGED_AMPLITUDE = 1;
+        private static final int CHANGED_WAVE_LENGTH = 1 << 1;
+        private static final int CHANGED_TOP_TITLE = 1 << 2;
+        private static final int CHANGED_CENTER_TITLE = 1 << 3;
+        private static final int CHANGED_BOTTOM_TITLE = 1 << 4;
+        private static final int CHANGED_PROGRESS = 1 << 5;
+        private static final int CHANGED_TITLES = CHANGED_TOP_TITLE | CHANGED_CENTER_TITLE | CHANGED_BOTTOM_TITLE;
+
+        private final WaveStyle.Builder mStyle = new WaveStyle.Builder();
+        private int mChanged;
+        private WaveShape mShape;
+        private float mAmplitudeRatio;
+        private float mWaveLengthRatio;
+        private String mTopTitle;
+        private String mCenterTitle;
+        private String mBottomTitle;
+        private int mProgressValue;
+
+        private Editor() {
+        }
+
+        /**
+         * Set the properties the style sets, over those set before. A shape type in the style
+         * replaces a shape set before.
+         */
+        public Editor setStyle(WaveStyle style) {
+            mStyle.setStyle(style);
+            if (style.has(WaveStyle.SHAPE_TYPE)) {
+                mShape = null;
+            }
+            return this;
+        }
+
+        public Editor setWaveColor(int color) {
+            mStyle.setWaveColor(color);
+            return this;
+        }
+
+        public Editor setWaveBgColor(int color) {
+            mStyle.setWaveBgColor(color);
+            return this;
+        }
+
+        public Editor setBorderColor(int color) {
+            mStyle.setBorderColor(color);
+            return this;
+        }
+
+        public Editor setBorderWidth(float width) {
+            mStyle.setBorderWidth(width);
+            return this;
+        }
+
+        public Editor setTopTitleColor(int color) {
+            mStyle.setTopTitleColor(color);
+            return this;
+        }
+
+        public Editor setCenterTitleColor(int color) {
+            mStyle.setCenterTitleColor(color);
+            return this;
+        }
+
+        public Editor setBottomTitleColor(int color) {
+            mStyle.setBottomTitleColor(color);
+            return this;
+        }
+
+        public Editor setShapeType(ShapeType shapeType) {
+            mStyle.setShapeType(shapeType);
+            mShape = null;
+            return this;
+        }
+
+        /**
+         * @see WaveLoadingView#setShape(WaveShape)
+         */
+        public Editor setShape(WaveShape shape) {
+            if (shape == null) {
+                throw new IllegalArgumentException("shape must not be null, use setShapeType instead");
+            }
+            mShape = shape;
+            return this;
+        }
+
+        public Editor setWaveLayers(WaveLayer... layers) {
+            mStyle.setWaveLayers(layers);
+            return this;
+        }
+
+        /**
+         * @see WaveLoadingView#setAmplitudeRatio(int)
+         */
+        public Editor setAmplitudeRatio(int amplitudeRatio) {
+            mAmplitudeRatio = (float) amplitudeRatio / 1000;
+            mChanged |= CHANGED_AMPLITUDE;
+            return this;
+        }
+
+        /**
+         * @see WaveLoadingView#setWaveLengthRatio(float)
+         */
+        public Editor setWaveLengthRatio(float waveLengthRatio) {
+            if (waveLengthRatio <= 0) {
+                throw new IllegalArgumentException("waveLengthRatio must be > 0: " + waveLengthRatio);
+            }
+            mWaveLengthRatio = waveLengthRatio;
+            mChanged |= CHANGED_WAVE_LENGTH;
+            return this;
+        }
+
+        public Editor setTopTitle(String topTitle) {
+            mTopTitle = topTitle;
+            mChanged |= CHANGED_TOP_TITLE;
+            return this;
+        }
+
+        public Editor setCenterTitle(String centerTitle) {
+            mCenterTitle = centerTitle;
+            mChanged |= CHANGED_CENTER_TITLE;
+            return this;
+        }
+
+        public Editor setBottomTitle(String bottomTitle) {
+            mBottomTitle = bottomTitle;
+            mChanged |= CHANGED_BOTTOM_TITLE;
+            return this;
+        }
+
+        /**
+         * @see WaveLoadingView#setProgressValue(int)
+         */
+        public Editor setProgressValue(int progress) {
+            mProgressValue = progress;
+            mChanged |= CHANGED_PROGRESS;
+            return this;
+        }
+
+        /**
+         * Apply the changes to the view. Must be called on the UI thread.
+         */
+        public void apply() {
+            WaveLoadingView.this.apply(this);
+        }
     }
 
     /**
@@ -540,14 +644,48 @@ public class WaveLoadingView extends View {
      * @param amplitudeRatio Default to be 0.05. Result of amplitudeRatio + waterLevelRatio should be less than 1.
      */
     public void setAmplitudeRatio(int amplitudeRatio) {
-        if (this.mAmplitudeRatio != (float) amplitudeRatio / 1000) {
-            this.mAmplitudeRatio = (float) amplitudeRatio / 1000;
+        if (mRenderer.getAmplitudeRatio() != (float) amplitudeRatio / 1000) {
+            mRenderer.setAmplitudeRatio((float) amplitudeRatio / 1000);
             invalidate();
         }
     }
 
     public float getAmplitudeRatio() {
-        return mAmplitudeRatio;
+        return mRenderer.getAmplitudeRatio();
+    }
+
+    /**
+     * Set horizontal size of wave. Cheap enough to animate: the wave bitmap is stretched, and only
+     * rasterized again when stretching it further would blur the wave.
+     *
+     * @param waveLengthRatio Wave length relative to the view width, default to be 1.
+     */
+    public void setWaveLengthRatio(float waveLengthRatio) {
+        if (waveLengthRatio <= 0) {
+            throw new IllegalArgumentException("waveLengthRatio must be > 0: " + waveLengthRatio);
+        }
+        if (mRenderer.getWaveLengthRatio() != waveLengthRatio) {
+            mRenderer.setWaveLengthRatio(waveLengthRatio);
+            invalidate();
+        }
+    }
+
+    public float getWaveLengthRatio() {
+        return mRenderer.getWaveLengthRatio();
+    }
+
+    /**
+     * Replace the two default waves with custom layers, e.g. three waves in brand colors.
+     *
+     * @param layers The layers, from back to front. None to go back to the default waves.
+     */
+    public void setWaveLayers(WaveLayer... layers) {
+        mRenderer.setWaveLayers(layers);
+        invalidate();
+    }
+
+    public WaveLayer[] getWaveLayers() {
+        return mRenderer.getWaveLayers();
     }
 
     /**
@@ -556,39 +694,175 @@ public class WaveLoadingView extends View {
      * @param progress Default to be 50.
      */
     public void setProgressValue(int progress) {
+        setProgressValue(progress, true);
+    }
+
+    /**
+     * Set the water level. An animated change starts from the current level and speed, so
+     * calling this again before the previous change finished retargets it smoothly.
+     *
+     * @param progress Default to be 50.
+     * @param animate  Whether to animate to the new level, or to snap to it.
+     */
+    public void setProgressValue(int progress, boolean animate) {
         mProgressValue = progress;
-        ObjectAnimator waterLevelAnim = ObjectAnimator.ofFloat(this, "waterLevelRatio", mWaterLevelRatio, ((float) mProgressValue / 100));
-        waterLevelAnim.setDuration(1000);
-        waterLevelAnim.setInterpolator(new DecelerateInterpolator());
-        AnimatorSet animatorSetProgress = new AnimatorSet();
-        animatorSetProgress.play(waterLevelAnim);
-        animatorSetProgress.start();
+        float target = (float) mProgressValue / 100;
+        if (!animate) {
+            if (mProgressAnim != null) {
+                mProgressAnim.cancel();
+            }
+            mLevelTween.finish();
+            stopSloshing();
+            setWaterLevelRatio(target);
+            return;
+        }
+        if (mSloshing) {
+            if (mProgressAnim != null) {
+                mProgressAnim.cancel();
+            }
+            mLevelTween.finish();
+            mSlosh.retarget(getWaterLevelRatio(), target, mTimeSource.animationTimeMillis());
+            if (!mSloshScheduled) {
+                scheduleSlosh();
+            }
+            return;
+        }
+        ValueAnimator progressAnim = getProgressAnimator();
+        mLevelTween.retarget(getWaterLevelRatio(), target, progressAnim.getAnimatedFraction());
+        // Restart the one animator instead of piling up a new one per call.
+        progressAnim.start();
+    }
+
+    private ValueAnimator getProgressAnimator() {
+        if (mProgressAnim == null) {
+            mProgressAnim = ValueAnimator.ofFloat(0f, 1f);
+            mProgressAnim.setDuration(PROGRESS_ANIM_DURATION);
+            // The tween shapes the curve, the animator only supplies linear time.
+            mProgressAnim.setInterpolator(new LinearInterpolator());
+            mProgressAnim.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    if (mLevelTween.isRunning()) {
+                        float t = animation.getAnimatedFraction();
+                        setWaterLevelRatio(mLevelTween.valueAt(t));
+                        if (t >= 1) {
+                            mLevelTween.finish();
+                        }
+                    }
+                }
+            });
+        }
+        return mProgressAnim;
     }
 
     public int getProgressValue() {
         return mProgressValue;
     }
 
+    /**
+     * Animate level changes physically: the water overshoots a little, and its surface tilts and
+     * rocks until it settles. The simulation only steps while the water moves.
+     *
+     * @param sloshing Default to be false, for a plain decelerating change.
+     */
+    public void setSloshing(boolean sloshing) {
+        if (mSloshing != sloshing) {
+            mSloshing = sloshing;
+            if (!sloshing) {
+                stopSloshing();
+            }
+        }
+    }
+
+    public boolean isSloshing() {
+        return mSloshing;
+    }
+
+    private void stepSlosh() {
+        mSloshScheduled = false;
+        boolean moving = mSlosh.advance(mTimeSource.animationTimeMillis());
+        mRenderer.setSurfaceTilt(mSlosh.getTilt());
+        mRenderer.setWaterLevelRatio(mSlosh.getLevel());
+        // The tilt may change alone, so invalidate even if the level did not.
+        invalidateWaveBand();
+        if (moving) {
+            scheduleSlosh();
+        }
+    }
+
+    /**
+     * Step the simulation on the next frame the wave is drawn in, so that it keeps to the frame
+     * rate cap. The simulation keeps its own time, the frame rate only changes its smoothness.
+     */
+    private void scheduleSlosh() {
+        if (mSuspended) {
+            // Nobody sees the water move, let it settle right away.
+            stopSloshing();
+            return;
+        }
+        mSloshScheduled = true;
+        mTimeSource.postFrame(this, mSloshFrame, getFrameIntervalMillis());
+    }
+
+    /**
+     * Settle the water where it was heading, flat.
+     */
+    private void stopSloshing() {
+        if (mSlosh.isResting()) {
+            return;
+        }
+        mTimeSource.removeFrame(this, mSloshFrame);
+        mSloshScheduled = false;
+        mSlosh.snap((float) mProgressValue / 100);
+        mRenderer.setSurfaceTilt(0);
+        setWaterLevelRatio(mSlosh.getLevel());
+        invalidate();
+    }
+
     public void setWaveShiftRatio(float waveShiftRatio) {
-        if (this.mWaveShiftRatio != waveShiftRatio) {
-            this.mWaveShiftRatio = waveShiftRatio;
-            invalidate();
+        if (mRenderer.getWaveShiftRatio() != waveShiftRatio) {
+            mRenderer.setWaveShiftRatio(waveShiftRatio);
+            invalidateWaveBand();
         }
     }
 
     public float getWaveShiftRatio() {
-        return mWaveShiftRatio;
+        return mRenderer.getWaveShiftRatio();
     }
 
     public void setWaterLevelRatio(float waterLevelRatio) {
-        if (this.mWaterLevelRatio != waterLevelRatio) {
-            this.mWaterLevelRatio = waterLevelRatio;
+        if (mRenderer.getWaterLevelRatio() != waterLevelRatio) {
+            mRenderer.setWaterLevelRatio(waterLevelRatio);
+            invalidateWaveBand();
+        }
+    }
+
+    /**
+     * Only the band around the water surface changes while the wave moves: above it the shape
+     * is empty, below it the wave is solid. Invalidate that band, together with the band last
+     * invalidated so that a moving water level also repaints where the surface used to be.
+     * <p>
+     * Software rendering keeps the pixels outside the dirty rect from the previous frame.
+     * Hardware rendering since Lollipop redraws the whole view, so this costs nothing there.
+     */
+    private void invalidateWaveBand() {
+        if (!mRenderer.getWaveBand(mDirtyRect)) {
             invalidate();
+            return;
+        }
+        // The band of this frame, plus the one invalidated before, where the surface used to be.
+        mTmpRect.set(mDirtyRect);
+        if (!mWaveBand.isEmpty()) {
+            mDirtyRect.union(mWaveBand);
+        }
+        mWaveBand.set(mTmpRect);
+        if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
         }
     }
 
     public float getWaterLevelRatio() {
-        return mWaterLevelRatio;
+        return mRenderer.getWaterLevelRatio();
     }
 
     /**
@@ -597,125 +871,177 @@ public class WaveLoadingView extends View {
      * @param topTitle Default to be null.
      */
     public void setTopTitle(String topTitle) {
-        mTopTitle = topTitle;
+        mRenderer.getTopTitle().setText(topTitle);
+        invalidateStaticLayers();
     }
 
     public String getTopTitle() {
-        return mTopTitle;
+        return mRenderer.getTopTitle().getText();
     }
 
     public void setCenterTitle(String centerTitle) {
-        mCenterTitle = centerTitle;
+        mRenderer.getCenterTitle().setText(centerTitle);
+        invalidateStaticLayers();
     }
 
     public String getCenterTitle() {
-        return mCenterTitle;
+        return mRenderer.getCenterTitle().getText();
     }
 
     public void setBottomTitle(String bottomTitle) {
-        mBottomTitle = bottomTitle;
+        mRenderer.getBottomTitle().setText(bottomTitle);
+        invalidateStaticLayers();
     }
 
     public String getBottomTitle() {
-        return mBottomTitle;
+        return mRenderer.getBottomTitle().getText();
     }
 
     public void setTopTitleColor(int topTitleColor) {
-        mTopTitlePaint.setColor(topTitleColor);
+        mRenderer.getTopTitle().getPaint().setColor(topTitleColor);
+        invalidateStaticLayers();
     }
 
     public int getTopTitleColor() {
-        return mTopTitlePaint.getColor();
+        return mRenderer.getTopTitle().getPaint().getColor();
     }
 
     public void setCenterTitleColor(int centerTitleColor) {
-        mCenterTitlePaint.setColor(centerTitleColor);
+        mRenderer.getCenterTitle().getPaint().setColor(centerTitleColor);
+        invalidateStaticLayers();
     }
 
     public int getCenterTitleColor() {
-        return mCenterTitlePaint.getColor();
+        return mRenderer.getCenterTitle().getPaint().getColor();
     }
 
     public void setBottomTitleColor(int bottomTitleColor) {
-        mBottomTitlePaint.setColor(bottomTitleColor);
+        mRenderer.getBottomTitle().getPaint().setColor(bottomTitleColor);
+        invalidateStaticLayers();
     }
 
     public int getBottomTitleColor() {
-        return mBottomTitlePaint.getColor();
+        return mRenderer.getBottomTitle().getPaint().getColor();
     }
 
     public void setTopTitleSize(float topTitleSize) {
-        mTopTitlePaint.setTextSize(sp2px(topTitleSize));
+        mRenderer.getTopTitle().setTextSize(sp2px(topTitleSize));
+        invalidateStaticLayers();
     }
 
     public float getsetTopTitleSize() {
-        return mTopTitlePaint.getTextSize();
+        return mRenderer.getTopTitle().getPaint().getTextSize();
     }
 
     public void setCenterTitleSize(float centerTitleSize) {
-        mCenterTitlePaint.setTextSize(sp2px(centerTitleSize));
+        mRenderer.getCenterTitle().setTextSize(sp2px(centerTitleSize));
+        invalidateStaticLayers();
     }
 
     public float getCenterTitleSize() {
-        return mCenterTitlePaint.getTextSize();
+        return mRenderer.getCenterTitle().getPaint().getTextSize();
     }
 
     public void setBottomTitleSize(float bottomTitleSize) {
-        mBottomTitlePaint.setTextSize(sp2px(bottomTitleSize));
+        mRenderer.getBottomTitle().setTextSize(sp2px(bottomTitleSize));
+        invalidateStaticLayers();
     }
 
     public float getBottomTitleSize() {
-        return mBottomTitlePaint.getTextSize();
+        return mRenderer.getBottomTitle().getPaint().getTextSize();
     }
 
     public void setTopTitleStrokeWidth(float topTitleStrokeWidth) {
-        mTopTitleStrokePaint.setStrokeWidth(dp2px(topTitleStrokeWidth));
+        mRenderer.getTopTitle().getStrokePaint().setStrokeWidth(dp2px(topTitleStrokeWidth));
+        invalidateStaticLayers();
     }
 
     public void setTopTitleStrokeColor(int topTitleStrokeColor) {
-        mTopTitleStrokePaint.setColor(topTitleStrokeColor);
+        mRenderer.getTopTitle().getStrokePaint().setColor(topTitleStrokeColor);
+        invalidateStaticLayers();
     }
 
     public void setBottomTitleStrokeWidth(float bottomTitleStrokeWidth) {
-        mBottomTitleStrokePaint.setStrokeWidth(dp2px(bottomTitleStrokeWidth));
+        mRenderer.getBottomTitle().getStrokePaint().setStrokeWidth(dp2px(bottomTitleStrokeWidth));
+        invalidateStaticLayers();
     }
 
     public void setBottomTitleStrokeColor(int bottomTitleStrokeColor) {
-        mBottomTitleStrokePaint.setColor(bottomTitleStrokeColor);
+        mRenderer.getBottomTitle().getStrokePaint().setColor(bottomTitleStrokeColor);
+        invalidateStaticLayers();
     }
 
     public void setCenterTitleStrokeWidth(float centerTitleStrokeWidth) {
-        mCenterTitleStrokePaint.setStrokeWidth(dp2px(centerTitleStrokeWidth));
+        mRenderer.getCenterTitle().getStrokePaint().setStrokeWidth(dp2px(centerTitleStrokeWidth));
+        invalidateStaticLayers();
     }
 
     public void setCenterTitleStrokeColor(int centerTitleStrokeColor) {
-        mCenterTitleStrokePaint.setColor(centerTitleStrokeColor);
+        mRenderer.getCenterTitle().getStrokePaint().setColor(centerTitleStrokeColor);
+        invalidateStaticLayers();
     }
 
     public void startAnimation() {
-        if (mAnimatorSet != null) {
-            mAnimatorSet.start();
+        switch (mAnimationMode) {
+            case SHARED_CLOCK:
+                mTimeAnimating = true;
+                mTimePaused = false;
+                // Before it is attached, onAttachedToWindow registers it. The clock is static,
+                // registering a detached view would leak it.
+                if (mAttached && !mSuspended) {
+                    WaveAnimationClock.getInstance().register(this);
+                }
+                break;
+            case FRAME_TIME:
+                mTimeAnimating = true;
+                mTimePaused = false;
+                restartFramePhase();
+                invalidate();
+                break;
+            default:
+                getWaveShiftAnimator().start();
+                if (mSuspended) {
+                    suspendWaveShiftAnimator();
+                }
+                break;
         }
     }
 
     public void endAnimation() {
-        if (mAnimatorSet != null) {
-            mAnimatorSet.end();
+        if (mAnimationMode != AnimationMode.ANIMATOR) {
+            stopTimeAnimation();
+        } else if (waveShiftAnim != null) {
+            mWaveShiftAnimSuspended = false;
+            waveShiftAnim.end();
         }
     }
 
     public void cancelAnimation() {
-        if (mAnimatorSet != null) {
-            mAnimatorSet.cancel();
+        if (mAnimationMode != AnimationMode.ANIMATOR) {
+            stopTimeAnimation();
+        } else if (waveShiftAnim != null) {
+            mWaveShiftAnimSuspended = false;
+            waveShiftAnim.cancel();
         }
     }
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
     @SuppressWarnings("deprecation")
     public void pauseAnimation() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            if (mAnimatorSet != null) {
-                mAnimatorSet.pause();
+        if (mAnimationMode != AnimationMode.ANIMATOR) {
+            if (mTimeAnimating && !mTimePaused) {
+                if (mAnimationMode == AnimationMode.SHARED_CLOCK) {
+                    WaveAnimationClock.getInstance().unregister(this);
+                } else if (!mSuspended) {
+                    updateFramePhase();
+                }
+                mTimePaused = true;
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            if (waveShiftAnim != null) {
+                waveShiftAnim.pause();
+                // Stays paused when the view becomes visible again.
+                mWaveShiftAnimSuspended = false;
             }
         }
     }
@@ -723,9 +1049,32 @@ public class WaveLoadingView extends View {
     @TargetApi(Build.VERSION_CODES.KITKAT)
     @SuppressWarnings("deprecation")
     public void resumeAnimation() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            if (mAnimatorSet != null) {
-                mAnimatorSet.resume();
+        if (mAnimationMode != AnimationMode.ANIMATOR) {
+            if (mTimeAnimating && mTimePaused) {
+                mTimePaused = false;
+                if (mSuspended) {
+                    // Picked up again once the view is visible.
+                    return;
+                }
+                if (mAnimationMode == AnimationMode.SHARED_CLOCK) {
+                    if (mAttached) {
+                        WaveAnimationClock.getInstance().register(this);
+                    }
+                } else {
+                    // Carry on from the phase the wave was paused at.
+                    restartFramePhase();
+                    invalidate();
+                }
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            if (waveShiftAnim == null || !waveShiftAnim.isPaused()) {
+                return;
+            }
+            if (mSuspended) {
+                // Left to unsuspendWaveShiftAnimator, once the view is visible.
+                mWaveShiftAnimSuspended = true;
+            } else {
+                waveShiftAnim.resume();
             }
         }
     }
@@ -736,45 +1085,492 @@ public class WaveLoadingView extends View {
      * @param duration The length of the animation, in milliseconds.
      */
     public void setAnimDuration(long duration) {
-        waveShiftAnim.setDuration(duration);
+        boolean framePhaseRunning = isFramePhaseRunning();
+        if (framePhaseRunning) {
+            updateFramePhase();
+        }
+        mAnimDuration = duration;
+        if (framePhaseRunning) {
+            restartFramePhase();
+        }
+        if (waveShiftAnim != null) {
+            waveShiftAnim.setDuration(duration);
+        }
+    }
+
+    /**
+     * Choose what drives the wave animation.
+     *
+     * @param animationMode Default to be {@link AnimationMode#ANIMATOR}. Time based modes fall
+     *                      back to it before Jelly Bean.
+     */
+    public void setAnimationMode(AnimationMode animationMode) {
+        if (animationMode != AnimationMode.ANIMATOR && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            animationMode = AnimationMode.ANIMATOR;
+        }
+        if (mAnimationMode == animationMode) {
+            return;
+        }
+        boolean running = mAnimationMode != AnimationMode.ANIMATOR
+                ? mTimeAnimating : waveShiftAnim != null && waveShiftAnim.isStarted();
+        cancelAnimation();
+        mAnimationMode = animationMode;
+        if (running) {
+            startAnimation();
+        }
+    }
+
+    public AnimationMode getAnimationMode() {
+        return mAnimationMode;
+    }
+
+    /**
+     * Called by {@link WaveAnimationClock} once per frame in {@link AnimationMode#SHARED_CLOCK} mode.
+     * The phase only depends on the frame time, which keeps views of the same duration in phase.
+     */
+    void onClockFrame(long frameTimeNanos) {
+        long durationNanos = Math.max(1, mAnimDuration) * 1000000L;
+        // Only invalidates if the phase actually moved.
+        onAnimatedWaveShift((float) (frameTimeNanos % durationNanos) / durationNanos);
+    }
+
+    /**
+     * Replace the clock and frame scheduling of the view, in tests. Set before animating.
+     */
+    void setTimeSource(WaveTimeSource timeSource) {
+        mTimeSource.removeFrame(this, mFrameRunnable);
+        mTimeSource = timeSource;
+    }
+
+    /**
+     * @return How many times the wave shaders were created, see {@link WaveRenderer#getShaderBuildCount()}.
+     */
+    int getShaderBuildCount() {
+        return mRenderer.getShaderBuildCount();
+    }
+
+    /**
+     * @return Whether the wave shift animator runs and is not paused, in tests.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    boolean isWaveShiftAnimating() {
+        return waveShiftAnim != null && waveShiftAnim.isStarted() && !waveShiftAnim.isPaused();
+    }
+
+    /**
+     * @return Whether the animator of level changes runs, in tests.
+     */
+    boolean isProgressAnimating() {
+        return mProgressAnim != null && mProgressAnim.isRunning();
+    }
+
+    /**
+     * @return How far adaptive mode stepped down, from 0 for not at all to 2, in tests.
+     */
+    int getDegradeLevel() {
+        return mDegradeLevel;
+    }
+
+    /**
+     * @return Whether the slosh simulation is being stepped, in tests.
+     */
+    boolean isSloshAnimating() {
+        return mSloshScheduled;
+    }
+
+    /**
+     * Cap the frame rate of the wave. The animation keeps its speed, it only moves in larger
+     * steps. Applies to every {@link AnimationMode}. In {@link AnimationMode#ANIMATOR} mode the
+     * animator still wakes on every display frame, only the drawing is skipped: the animator
+     * frame delay is global to the app. The other modes do not wake between capped frames.
+     *
+     * @param fps Frames per second, e.g. 30 or 24. Default to be 0, which follows the display.
+     */
+    public void setTargetFrameRate(int fps) {
+        mTargetFps = Math.max(0, fps);
+    }
+
+    public int getTargetFrameRate() {
+        return mTargetFps;
+    }
+
+    /**
+     * Let the view trade smoothness for time. When its animation frames come late, because
+     * the app drops frames, it halves its frame rate, then stops drawing the back wave. It
+     * steps back up once frames are on time again for a while, and waits longer each time a
+     * step up proves too early.
+     * While the system is in power save mode, or animations are turned off in the developer
+     * options, the wave is not animated at all.
+     *
+     * @param adaptive Default to be false.
+     */
+    public void setAdaptiveFrameRate(boolean adaptive) {
+        if (mAdaptiveFrameRate == adaptive) {
+            return;
+        }
+        mAdaptiveFrameRate = adaptive;
+        mLastFrameTime = 0;
+        mStepUpWindows = MIN_STEP_UP_WINDOWS;
+        mSteppedUp = false;
+        setDegradeLevel(DEGRADE_NONE);
+        mStaticRender = isStaticRenderRequested();
+        updateVisibleToUser();
+    }
+
+    public boolean isAdaptiveFrameRate() {
+        return mAdaptiveFrameRate;
+    }
+
+    /**
+     * Every animated wave shift goes through here, so that the frame rate cap holds whatever
+     * drives the animation.
+     */
+    private void onAnimatedWaveShift(float waveShiftRatio) {
+        // The animator and the shared clock call in on every display frame, capped or not.
+        onAnimationFrame(VSYNC_MILLIS);
+        long interval = getFrameIntervalMillis();
+        if (interval > 0) {
+            long now = mTimeSource.animationTimeMillis();
+            // Vsync does not land exactly on the interval, accept a frame slightly early.
+            if (now - mLastShiftFrameTime < interval - 2) {
+                return;
+            }
+            mLastShiftFrameTime = now;
+        }
+        setWaveShiftRatio(waveShiftRatio);
+    }
+
+    /**
+     * @return The time between two frames of the wave, 0 for every display frame.
+     */
+    private long getFrameIntervalMillis() {
+        int fps = mTargetFps;
+        if (mDegradeLevel >= DEGRADE_FRAME_RATE) {
+            fps = Math.max(ADAPTIVE_MIN_FPS, (fps > 0 ? fps : ADAPTIVE_BASE_FPS) / 2);
+        }
+        return fps > 0 ? 1000 / fps : 0;
+    }
+
+    /**
+     * Adaptive mode: measure how late this animation frame came after the previous one, and
+     * step the degradation level once a window of frames has been seen. Runs in the animation
+     * callbacks, never in onDraw.
+     *
+     * @param expectedMillis The time the frame should have taken.
+     */
+    private void onAnimationFrame(long expectedMillis) {
+        if (!mAdaptiveFrameRate) {
+            return;
+        }
+        long now = mTimeSource.animationTimeMillis();
+        long delta = now - mLastFrameTime;
+        mLastFrameTime = now;
+        if (delta <= 0 || delta > MAX_FRAME_GAP_MILLIS) {
+            return;
+        }
+        mLateMillis += Math.max(0, delta - expectedMillis);
+        if (++mWindowFrames < ADAPT_WINDOW_FRAMES) {
+            return;
+        }
+        long averageLateMillis = mLateMillis / mWindowFrames;
+        mLateMillis = 0;
+        mWindowFrames = 0;
+        // Down as soon as half the frames are dropped, up only after frames stayed on time.
+        if (averageLateMillis > VSYNC_MILLIS / 2) {
+            mGoodWindows = 0;
+            if (mDegradeLevel < DEGRADE_BACK_WAVE) {
+                if (mSteppedUp) {
+                    // The level just left was still too much, stay below it longer next time.
+                    mStepUpWindows = Math.min(MAX_STEP_UP_WINDOWS, mStepUpWindows * 2);
+                }
+                mSteppedUp = false;
+                setDegradeLevel(mDegradeLevel + 1);
+            }
+        } else if (averageLateMillis < VSYNC_MILLIS / 8) {
+            if (mDegradeLevel > DEGRADE_NONE && ++mGoodWindows >= mStepUpWindows) {
+                mGoodWindows = 0;
+                mSteppedUp = true;
+                setDegradeLevel(mDegradeLevel - 1);
+            }
+        } else {
+            mGoodWindows = 0;
+        }
+    }
+
+    private void setDegradeLevel(int level) {
+        mLateMillis = 0;
+        mWindowFrames = 0;
+        mGoodWindows = 0;
+        if (mDegradeLevel == level) {
+            return;
+        }
+        mDegradeLevel = level;
+        mRenderer.setBackWave(level < DEGRADE_BACK_WAVE);
+        invalidate();
     }
 
-    private void initAnimation() {
-        // Wave waves infinitely.
-        waveShiftAnim = ObjectAnimator.ofFloat(this, "waveShiftRatio", 0f, 1f);
-        waveShiftAnim.setRepeatCount(ValueAnimator.INFINITE);
-        waveShiftAnim.setDuration(1000);
-        waveShiftAnim.setInterpolator(new LinearInterpolator());
-        mAnimatorSet = new AnimatorSet();
-        mAnimatorSet.play(waveShiftAnim);
+    /**
+     * Whether the system asked apps not to animate, only checked in adaptive mode.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean isStaticRenderRequested() {
+        if (!mAdaptiveFrameRate) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isPowerSaveMode()) {
+                return true;
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(mContext.getContentResolver(),
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1f) == 0f;
+        }
+        return false;
+    }
+
+    private boolean isFramePhaseRunning() {
+        return mAnimationMode == AnimationMode.FRAME_TIME && mTimeAnimating && !mTimePaused && !mSuspended;
+    }
+
+    private void stopTimeAnimation() {
+        mTimeAnimating = false;
+        mTimePaused = false;
+        if (mAnimationMode == AnimationMode.SHARED_CLOCK) {
+            WaveAnimationClock.getInstance().unregister(this);
+        } else {
+            mTimeSource.removeFrame(this, mFrameRunnable);
+        }
+    }
+
+    /**
+     * Derive the wave shift from the current animation time, in {@link AnimationMode#FRAME_TIME} mode.
+     */
+    private void updateFramePhase() {
+        long duration = Math.max(1, mAnimDuration);
+        long elapsed = mTimeSource.animationTimeMillis() - mPhaseStartTime;
+        mRenderer.setWaveShiftRatio((float) (elapsed % duration) / duration);
+    }
+
+    private void scheduleNextFrame() {
+        // A draw from another invalidate must not leave a second frame pending. Posted as a
+        // runnable rather than postInvalidateOnAnimation, to only dirty the band.
+        mTimeSource.removeFrame(this, mFrameRunnable);
+        long interval = getFrameIntervalMillis();
+        if (interval > 0) {
+            // Count from the start of this frame rather than from now, late in its draw pass,
+            // and accept vsync slightly early, or every capped frame slips by a display frame.
+            long sinceFrame = mTimeSource.uptimeMillis() - mTimeSource.animationTimeMillis();
+            interval = Math.max(0, interval - Math.max(0, sinceFrame) - 2);
+        }
+        mTimeSource.postFrame(this, mFrameRunnable, interval);
+    }
+
+    /**
+     * Make the frame time phase continue from the current wave shift.
+     */
+    private void restartFramePhase() {
+        mPhaseStartTime = mTimeSource.animationTimeMillis() - (long) (mRenderer.getWaveShiftRatio() * mAnimDuration);
+    }
+
+    private ObjectAnimator getWaveShiftAnimator() {
+        // Created on first use, time based modes never need it.
+        if (waveShiftAnim == null) {
+            // Wave waves infinitely.
+            waveShiftAnim = ObjectAnimator.ofFloat(this, WAVE_SHIFT_RATIO, 0f, 1f);
+            waveShiftAnim.setRepeatCount(ValueAnimator.INFINITE);
+            waveShiftAnim.setDuration(mAnimDuration);
+            waveShiftAnim.setInterpolator(new LinearInterpolator());
+        }
+        return waveShiftAnim;
     }
 
     @Override
     protected void onAttachedToWindow() {
+        mAttached = true;
+        mWindowVisible = getWindowVisibility() == VISIBLE;
+        mStaticRender = isStaticRenderRequested();
+        getViewTreeObserver().addOnScrollChangedListener(mVisibilityListener);
+        getViewTreeObserver().addOnGlobalLayoutListener(mVisibilityListener);
+        mRenderer.prepare();
         startAnimation();
+        updateVisibleToUser();
         super.onAttachedToWindow();
     }
 
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @SuppressWarnings("deprecation")
     @Override
     protected void onDetachedFromWindow() {
+        mAttached = false;
+        getViewTreeObserver().removeOnScrollChangedListener(mVisibilityListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            getViewTreeObserver().removeOnGlobalLayoutListener(mVisibilityListener);
+        } else {
+            getViewTreeObserver().removeGlobalOnLayoutListener(mVisibilityListener);
+        }
         cancelAnimation();
+        stopSloshing();
+        // Nothing may schedule frames or register with the clock until it is attached again.
+        mSuspended = true;
+        mRenderer.release();
+        mAtlas.release();
         super.onDetachedFromWindow();
     }
 
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        // Another activity covers ours, or the window is hidden.
+        mWindowVisible = visibility == VISIBLE;
+        // Coming back from the settings, power save or the animator scale may have changed.
+        if (mWindowVisible) {
+            mStaticRender = isStaticRenderRequested();
+        }
+        updateVisibleToUser();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        // This view or one of its ancestors became GONE or INVISIBLE, or came back.
+        updateVisibleToUser();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        updateVisibleToUser();
+    }
+
     /**
-     * Transparent the given color by the factor
-     * The more the factor closer to zero the more the color gets transparent
+     * Pause the wave while nobody can see it, and resume it, at the phase it stopped at,
+     * once it is visible again. This is independent of pauseAnimation and resumeAnimation.
+     * The same holds while the system asks for a static render, see setAdaptiveFrameRate.
+     */
+    private void updateVisibleToUser() {
+        boolean visible = isShownToUser();
+        if (visible == !mSuspended) {
+            return;
+        }
+        mSuspended = !visible;
+        if (mSuspended) {
+            stopSloshing();
+        }
+        switch (mAnimationMode) {
+            case SHARED_CLOCK:
+                if (mTimeAnimating && !mTimePaused) {
+                    if (mSuspended) {
+                        WaveAnimationClock.getInstance().unregister(this);
+                    } else {
+                        WaveAnimationClock.getInstance().register(this);
+                    }
+                }
+                break;
+            case FRAME_TIME:
+                if (mTimeAnimating && !mTimePaused) {
+                    if (mSuspended) {
+                        // Freeze the phase, onDraw stops scheduling frames.
+                        updateFramePhase();
+                    } else {
+                        restartFramePhase();
+                        invalidate();
+                    }
+                }
+                break;
+            default:
+                if (mSuspended) {
+                    suspendWaveShiftAnimator();
+                } else {
+                    unsuspendWaveShiftAnimator();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Overridden in tests, which have no window to be visible in.
+     */
+    boolean isShownToUser() {
+        // getGlobalVisibleRect is false when the view is scrolled out of all its parents.
+        return mAttached && mWindowVisible && !mStaticRender
+                && isShown() && getGlobalVisibleRect(mVisibleRect);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void suspendWaveShiftAnimator() {
+        if (waveShiftAnim == null || !waveShiftAnim.isStarted()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            if (!waveShiftAnim.isPaused()) {
+                waveShiftAnim.pause();
+                mWaveShiftAnimSuspended = true;
+            }
+        } else {
+            mSuspendedPlayTime = waveShiftAnim.getCurrentPlayTime();
+            waveShiftAnim.cancel();
+            mWaveShiftAnimSuspended = true;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void unsuspendWaveShiftAnimator() {
+        if (waveShiftAnim == null || !mWaveShiftAnimSuspended) {
+            return;
+        }
+        mWaveShiftAnimSuspended = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            waveShiftAnim.resume();
+        } else {
+            waveShiftAnim.start();
+            waveShiftAnim.setCurrentPlayTime(mSuspendedPlayTime);
+        }
+    }
+
+    /**
+     * Set the budget for wave bitmaps kept around for views that are no longer attached.
+     * Views of the same size and wave color share a single bitmap, so this only bounds
+     * the memory held for views that may come back, such as rows of a RecyclerView.
+     *
+     * @param maxBytes The maximum size in bytes. Default to be 8MB, 0 disables caching.
+     */
+    public static void setSharedWaveCacheSize(int maxBytes) {
+        WaveBitmapCache.getInstance().setMaxSize(maxBytes);
+    }
+
+    public static int getSharedWaveCacheSize() {
+        return WaveBitmapCache.getInstance().getMaxSize();
+    }
+
+    /**
+     * Set the budget for wave bitmaps kept for reuse once they dropped out of the shared cache.
+     * Resizing views, such as during layout transitions, reuse these instead of allocating.
      *
-     * @param color  The color to transparent
-     * @param factor 1.0f to 0.0f
-     * @return int - A transplanted color
+     * @param maxBytes The maximum size in bytes. Default to be 2MB, 0 disables pooling.
+     */
+    public static void setWaveBitmapPoolSize(int maxBytes) {
+        WaveBitmapCache.getInstance().setPoolMaxSize(maxBytes);
+    }
+
+    public static int getWaveBitmapPoolSize() {
+        return WaveBitmapCache.getInstance().getPoolMaxSize();
+    }
+
+    /**
+     * @return The size in bytes of the wave bitmaps currently pooled for reuse.
+     */
+    public static int getPooledWaveBitmapBytes() {
+        return WaveBitmapCache.getInstance().getPooledSize();
+    }
+
+    /**
+     * Release every wave bitmap no attached view uses, e.g. from
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
      */
-    private int adjustAlpha(int color, float factor) {
-        int alpha = Math.round(Color.alpha(color) * factor);
-        int red = Color.red(color);
-        int green = Color.green(color);
-        int blue = Color.blue(color);
-        return Color.argb(alpha, red, green, blue);
+    public static void trimSharedWaveMemory() {
+        WaveBitmapCache.getInstance().trimMemory();
     }
 
     /**
@@ -784,56 +1580,26 @@ public class WaveLoadingView extends View {
      * @return int - A transplanted sp
      */
     private int sp2px(float spValue) {
-        final float fontScale = mContext.getResources().getDisplayMetrics().scaledDensity;
-        return (int) (spValue * fontScale + 0.5f);
+        return WaveRenderer.sp2px(mContext.getResources().getDisplayMetrics(), spValue);
     }
 
     private int dp2px(float dp) {
-        final float scale = mContext.getResources().getDisplayMetrics().density;
-        return (int) (dp * scale + 0.5f);
+        return WaveRenderer.dp2px(mContext.getResources().getDisplayMetrics(), dp);
     }
 
     /**
-     * Draw EquilateralTriangle
-     *
-     * @param p1        Start point
-     * @param width     The width of triangle
-     * @param height    The height of triangle
-     * @param direction The direction of triangle
-     * @return Path
-     */
-    private Path getEquilateralTriangle(Point p1, int width, int height, int direction) {
-        Point p2 = null, p3 = null;
-        // NORTH
-        if (direction == 0) {
-            p2 = new Point(p1.x + width, p1.y);
-            p3 = new Point(p1.x + (width / 2), (int) (height - Math.sqrt(3.0) / 2 * height));
-        }
-        // SOUTH
-        else if (direction == 1) {
-            p2 = new Point(p1.x, p1.y - height);
-            p3 = new Point(p1.x + width, p1.y - height);
-            p1.x = p1.x + (width / 2);
-            p1.y = (int) (Math.sqrt(3.0) / 2 * height);
-        }
-        // EAST
-        else if (direction == 2) {
-            p2 = new Point(p1.x, p1.y - height);
-            p3 = new Point((int) (Math.sqrt(3.0) / 2 * width), p1.y / 2);
-        }
-        // WEST
-        else if (direction == 3) {
-            p2 = new Point(p1.x + width, p1.y - height);
-            p3 = new Point(p1.x + width, p1.y);
-            p1.x = (int) (width - Math.sqrt(3.0) / 2 * width);
-            p1.y = p1.y / 2;
-        }
-
-        Path path = new Path();
-        path.moveTo(p1.x, p1.y);
-        path.lineTo(p2.x, p2.y);
-        path.lineTo(p3.x, p3.y);
-
-        return path;
+     * Scrolling or layout may move the view out of, or back into, its parents' visible area.
+     */
+    private class VisibilityListener implements ViewTreeObserver.OnScrollChangedListener,
+            ViewTreeObserver.OnGlobalLayoutListener {
+        @Override
+        public void onScrollChanged() {
+            updateVisibleToUser();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            updateVisibleToUser();
+        }
     }
 }
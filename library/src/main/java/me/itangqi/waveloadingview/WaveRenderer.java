@@ -0,0 +1,824 @@
+package me.itangqi.waveloadingview;
+
+import android.content.res.TypedArray;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+
+import me.itangqi.library.R;
+import me.itangqi.waveloadingview.core.WaveMatrix;
+
+/**
+ * Draws a wave gauge: the shape, its border, the wave and the titles.
+ * <p>
+ * It holds everything drawing needs and nothing about views or animation, so the same code backs
+ * {@link WaveLoadingView} on the UI thread and {@link WaveLoadingSurfaceView} on its render
+ * thread. A renderer must only be used by one thread at a time.
+ */
+final class WaveRenderer {
+    /**
+     * +------------------------+
+     * | wave length - 波长      |__________
+     * |   /\          |   /\   |  |
+     * |  /  \         |  /  \  | amplitude - 振幅
+     * | /    \        | /    \ |  |
+     * |/      \       |/      \|__|_______
+     * |        \      /        |  |
+     * |         \    /         |  |
+     * |          \  /          |  |
+     * |           \/           | water level - 水位
+     * |                        |  |
+     * |                        |  |
+     * +------------------------+__|_______
+     */
+    static final float DEFAULT_AMPLITUDE_RATIO = 0.1f;
+    private static final float DEFAULT_AMPLITUDE_VALUE = 50.0f;
+    private static final float DEFAULT_WATER_LEVEL_RATIO = 0.5f;
+    private static final float DEFAULT_WAVE_LENGTH_RATIO = 1.0f;
+    private static final float DEFAULT_WAVE_SHIFT_RATIO = 0.0f;
+    private static final int DEFAULT_WAVE_COLOR = Color.parseColor("#212121");
+    private static final int DEFAULT_WAVE_BACKGROUND_COLOR = Color.parseColor("#00000000");
+    private static final int DEFAULT_TITLE_COLOR = Color.parseColor("#212121");
+    private static final int DEFAULT_STROKE_COLOR = Color.TRANSPARENT;
+    private static final float DEFAULT_BORDER_WIDTH = 0;
+    private static final float DEFAULT_TITLE_STROKE_WIDTH = 0;
+    // This is incorrect/not recommended by Joshua Bloch in his book Effective Java (2nd ed).
+    private static final int DEFAULT_WAVE_SHAPE = WaveLoadingView.ShapeType.CIRCLE.ordinal();
+    private static final int DEFAULT_TRIANGLE_DIRECTION = WaveLoadingView.TriangleDirection.NORTH.ordinal();
+    private static final int DEFAULT_ROUND_RECTANGLE_X_AND_Y = 30;
+    private static final float DEFAULT_TITLE_TOP_SIZE = 18.0f;
+    private static final float DEFAULT_TITLE_CENTER_SIZE = 22.0f;
+    private static final float DEFAULT_TITLE_BOTTOM_SIZE = 18.0f;
+    // Shape type of a custom WaveShape.
+    static final int SHAPE_TYPE_CUSTOM = -1;
+    // The look of the original two waves: a faint one behind, a quarter wave ahead of the front one.
+    private static final WaveLayer[] DEFAULT_LAYERS = {
+            WaveLayer.tinted(1f, 1f, 0f, 1f, 0.3f),
+            WaveLayer.tinted(1f, 1f, 0.25f, 1f, 1f)
+    };
+    // Horizontal scales a wave bitmap is stretched to before it is rasterized again, beyond them
+    // the crests turn blurry or aliased.
+    private static final float MIN_WAVE_LENGTH_SCALE = 0.5f;
+    private static final float MAX_WAVE_LENGTH_SCALE = 2f;
+    // Widest wave bitmap relative to the view width, longer waves are stretched further.
+    private static final int MAX_RASTER_WIDTH_RATIO = 4;
+    // Work deferred by a batch, see beginBatch().
+    private static final int UPDATE_SHAPE_GEOMETRY = 1;
+    private static final int UPDATE_WAVE_SHADER = 1 << 1;
+    private static final int UPDATE_WAVE_PAINT_COLOR = 1 << 2;
+    // Whole wave periods the shift goes through before speeds are applied, see WaveLayer#colored.
+    private static final int WAVE_CYCLES = 1000;
+
+    // Size of the drawing area.
+    private int mWidth;
+    private int mHeight;
+
+    // Dynamic Properties.
+    private float mAmplitudeRatio = DEFAULT_AMPLITUDE_VALUE / 1000;
+    private float mWaveLengthRatio = DEFAULT_WAVE_LENGTH_RATIO;
+    private int mWaveBgColor = DEFAULT_WAVE_BACKGROUND_COLOR;
+    private int mWaveColor = DEFAULT_WAVE_COLOR;
+    private int mShapeType = DEFAULT_WAVE_SHAPE;
+    private int mTriangleDirection = DEFAULT_TRIANGLE_DIRECTION;
+    private int mRoundRectangleXY = DEFAULT_ROUND_RECTANGLE_X_AND_Y;
+    private boolean mIsRoundRectangle;
+    private WaveShape mShape = WaveShapes.fromType(DEFAULT_WAVE_SHAPE, DEFAULT_TRIANGLE_DIRECTION, false, DEFAULT_ROUND_RECTANGLE_X_AND_Y);
+
+    // Properties.
+    private float mDefaultWaterLevel;
+    private float mWaterLevelRatio = 1f;
+    // Slope of the water surface, in rows per column, see WaveSlosh.
+    private float mSurfaceTilt;
+    private float mWaveShiftRatio = DEFAULT_WAVE_SHIFT_RATIO;
+    // Whole periods the wave shift went through, so that faster or slower layers stay seamless.
+    private int mWaveCycles;
+    private WaveLayer[] mLayers = DEFAULT_LAYERS;
+    // Whether to draw the layers behind the front one, see WaveLoadingView#setAdaptiveFrameRate.
+    private boolean mBackWave = true;
+
+    // Object used to draw.
+    // Layers that move together, each drawn with one shader, see updateWaveShader().
+    private WaveGroup[] mWaveGroups = new WaveGroup[0];
+    // Paint to draw border.
+    private final Paint mBorderPaint = new Paint();
+    // Titles, with the paints to draw them.
+    private final WaveTitle mTopTitle;
+    private final WaveTitle mCenterTitle;
+    private final WaveTitle mBottomTitle;
+    // Open batches, and the work they deferred.
+    private int mBatchDepth;
+    private int mPendingUpdates;
+    // Bumped by every change to what a frame looks like, other than the wave shift.
+    private int mGeneration;
+    // Wave shaders created so far, for tests to catch needless rebuilds.
+    private int mShaderBuilds;
+    // Static content, see setLayeredRendering.
+    private boolean mLayeredRendering;
+    private final WaveStaticLayer mUnderLayer = new WaveStaticLayer();
+    private final WaveStaticLayer mOverLayer = new WaveStaticLayer();
+    // Scratch for the shader matrix of a wave group.
+    private final float[] mMatrixValues = new float[WaveMatrix.VALUE_COUNT];
+
+    WaveRenderer() {
+        mBorderPaint.setAntiAlias(true);
+        mBorderPaint.setStyle(Paint.Style.STROKE);
+        mBorderPaint.setStrokeWidth(DEFAULT_BORDER_WIDTH);
+        mBorderPaint.setColor(DEFAULT_WAVE_COLOR);
+
+        mTopTitle = new WaveTitle(newTitlePaint(), newTitleStrokePaint(), 2 / 10.0f, false);
+        mCenterTitle = new WaveTitle(newTitlePaint(), newTitleStrokePaint(), 0.5f, true);
+        mBottomTitle = new WaveTitle(newTitlePaint(), newTitleStrokePaint(), 8 / 10.0f, true);
+    }
+
+    private static Paint newTitlePaint() {
+        Paint paint = new Paint();
+        paint.setColor(DEFAULT_TITLE_COLOR);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    private static Paint newTitleStrokePaint() {
+        Paint paint = new Paint();
+        paint.setColor(DEFAULT_STROKE_COLOR);
+        paint.setStrokeWidth(DEFAULT_TITLE_STROKE_WIDTH);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Apply the drawing attributes of the WaveLoadingView styleable.
+     */
+    void loadAttributes(TypedArray attributes, DisplayMetrics metrics) {
+        // Init ShapeType
+        mShapeType = attributes.getInteger(R.styleable.WaveLoadingView_wlv_shapeType, DEFAULT_WAVE_SHAPE);
+
+        // Init Wave
+        mWaveColor = attributes.getColor(R.styleable.WaveLoadingView_wlv_waveColor, DEFAULT_WAVE_COLOR);
+        mWaveBgColor = attributes.getColor(R.styleable.WaveLoadingView_wlv_wave_background_Color, DEFAULT_WAVE_BACKGROUND_COLOR);
+        updateWavePaintColor();
+
+        // Init AmplitudeRatio
+        float amplitudeRatioAttr = attributes.getFloat(R.styleable.WaveLoadingView_wlv_waveAmplitude, DEFAULT_AMPLITUDE_VALUE) / 1000;
+        mAmplitudeRatio = (amplitudeRatioAttr > DEFAULT_AMPLITUDE_RATIO) ? DEFAULT_AMPLITUDE_RATIO : amplitudeRatioAttr;
+
+        // Init WaveLengthRatio
+        float waveLengthRatio = attributes.getFloat(R.styleable.WaveLoadingView_wlv_waveLengthRatio, DEFAULT_WAVE_LENGTH_RATIO);
+        mWaveLengthRatio = waveLengthRatio > 0 ? waveLengthRatio : DEFAULT_WAVE_LENGTH_RATIO;
+
+        // Init RoundRectangle
+        mIsRoundRectangle = attributes.getBoolean(R.styleable.WaveLoadingView_wlv_round_rectangle, false);
+        mRoundRectangleXY = attributes.getInteger(R.styleable.WaveLoadingView_wlv_round_rectangle_x_and_y, DEFAULT_ROUND_RECTANGLE_X_AND_Y);
+
+        // Init Triangle direction
+        mTriangleDirection = attributes.getInteger(R.styleable.WaveLoadingView_wlv_triangle_direction, DEFAULT_TRIANGLE_DIRECTION);
+        mShape = WaveShapes.fromType(mShapeType, mTriangleDirection, mIsRoundRectangle, mRoundRectangleXY);
+
+        // Init Border
+        mBorderPaint.setStrokeWidth(attributes.getDimension(R.styleable.WaveLoadingView_wlv_borderWidth, dp2px(metrics, DEFAULT_BORDER_WIDTH)));
+        mBorderPaint.setColor(attributes.getColor(R.styleable.WaveLoadingView_wlv_borderColor, DEFAULT_WAVE_COLOR));
+
+        // Init Top Title
+        loadTitle(mTopTitle, attributes.getString(R.styleable.WaveLoadingView_wlv_titleTop),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleTopColor, DEFAULT_TITLE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleTopSize, sp2px(metrics, DEFAULT_TITLE_TOP_SIZE)),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleTopStrokeColor, DEFAULT_STROKE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleTopStrokeWidth, dp2px(metrics, DEFAULT_TITLE_STROKE_WIDTH)));
+
+        // Init Center Title
+        loadTitle(mCenterTitle, attributes.getString(R.styleable.WaveLoadingView_wlv_titleCenter),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleCenterColor, DEFAULT_TITLE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleCenterSize, sp2px(metrics, DEFAULT_TITLE_CENTER_SIZE)),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleCenterStrokeColor, DEFAULT_STROKE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleCenterStrokeWidth, dp2px(metrics, DEFAULT_TITLE_STROKE_WIDTH)));
+
+        // Init Bottom Title
+        loadTitle(mBottomTitle, attributes.getString(R.styleable.WaveLoadingView_wlv_titleBottom),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleBottomColor, DEFAULT_TITLE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleBottomSize, sp2px(metrics, DEFAULT_TITLE_BOTTOM_SIZE)),
+                attributes.getColor(R.styleable.WaveLoadingView_wlv_titleBottomStrokeColor, DEFAULT_STROKE_COLOR),
+                attributes.getDimension(R.styleable.WaveLoadingView_wlv_titleBottomStrokeWidth, dp2px(metrics, DEFAULT_TITLE_STROKE_WIDTH)));
+
+        updateShapeGeometry();
+        updateWaveShader();
+    }
+
+    /**
+     * Size the titles like the attribute defaults do, for renderers without attributes.
+     */
+    void loadDefaultTitleSizes(DisplayMetrics metrics) {
+        mTopTitle.setTextSize(sp2px(metrics, DEFAULT_TITLE_TOP_SIZE));
+        mCenterTitle.setTextSize(sp2px(metrics, DEFAULT_TITLE_CENTER_SIZE));
+        mBottomTitle.setTextSize(sp2px(metrics, DEFAULT_TITLE_BOTTOM_SIZE));
+    }
+
+    private static void loadTitle(WaveTitle title, String text, int color, float size, int strokeColor, float strokeWidth) {
+        title.getPaint().setColor(color);
+        title.getStrokePaint().setColor(strokeColor);
+        title.getStrokePaint().setStrokeWidth(strokeWidth);
+        title.setTextSize(size);
+        title.setText(text);
+    }
+
+    /**
+     * Set the size of the drawing area. Acquires a wave bitmap for the new size.
+     */
+    void setSize(int width, int height) {
+        if (mWidth == width && mHeight == height) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        updateShapeGeometry();
+        updateWaveShader();
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Defer the work setters do until {@link #endBatch()}, so that many changes rebuild the
+     * geometry, the wave bitmaps and the paints at most once each. Batches can nest.
+     */
+    void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Do the work the batch deferred: whatever is needed among the shape geometry, the wave
+     * bitmaps, which recolor the paints as well, or the paint colors alone.
+     */
+    void endBatch() {
+        if (mBatchDepth == 0 || --mBatchDepth > 0) {
+            return;
+        }
+        int pending = mPendingUpdates;
+        mPendingUpdates = 0;
+        if ((pending & UPDATE_SHAPE_GEOMETRY) != 0) {
+            updateShapeGeometry();
+        }
+        if ((pending & UPDATE_WAVE_SHADER) != 0) {
+            updateWaveShader();
+        } else if ((pending & UPDATE_WAVE_PAINT_COLOR) != 0) {
+            updateWavePaintColor();
+        }
+    }
+
+    /**
+     * Acquire the wave bitmaps again after {@link #release()}.
+     */
+    void prepare() {
+        updateWaveShader();
+    }
+
+    /**
+     * Give back the wave bitmaps and the static layers. Drawing does nothing until
+     * {@link #prepare()} is called again.
+     */
+    void release() {
+        releaseWaveShader();
+        mUnderLayer.release();
+        mOverLayer.release();
+    }
+
+    boolean hasWave() {
+        return mWaveGroups.length > 0 && mWaveGroups[0].mShader != null;
+    }
+
+    void draw(Canvas canvas) {
+        // Draw Wave.
+        if (hasWave()) {
+            for (WaveGroup group : mWaveGroups) {
+                updateShaderMatrix(group);
+            }
+
+            // The back group fills the background as well, see updateWavePaintColor().
+            if (mLayeredRendering) {
+                // Border under the wave, titles over it, each replayed in one call.
+                drawStaticLayer(canvas, mUnderLayer, false);
+                drawWaves(canvas);
+                drawStaticLayer(canvas, mOverLayer, true);
+            } else {
+                drawBorder(canvas);
+                drawWaves(canvas);
+                drawTitles(canvas);
+            }
+        }
+    }
+
+    private void updateShaderMatrix(WaveGroup group) {
+        // The bitmap holds one period, stretched to the wave length here.
+        float period = getWavePeriod(group);
+        // Sacle shader according to waveLengthRatio and amplitudeRatio, translate it according
+        // to waveShiftRatio and waterLevelRatio, move the wave band back to where it belongs
+        // in the view and tilt the surface around the middle of the water line.
+        float shift = WaveMatrix.layerShift(mWaveCycles, mWaveShiftRatio, group.mSpeed);
+        WaveMatrix.compute(mMatrixValues,
+                period / group.mBitmap.getWidth(), mAmplitudeRatio / DEFAULT_AMPLITUDE_RATIO, mDefaultWaterLevel,
+                shift * period, (DEFAULT_WATER_LEVEL_RATIO - mWaterLevelRatio) * mHeight,
+                group.mBitmap.getStripTop(), mSurfaceTilt, mWidth / 2f);
+        group.mMatrix.setValues(mMatrixValues);
+
+        // Assign matrix to invalidate the shader.
+        group.mShader.setLocalMatrix(group.mMatrix);
+    }
+
+    private void drawWaves(Canvas canvas) {
+        for (WaveGroup group : mWaveGroups) {
+            mShape.drawFill(canvas, group.mPaint);
+        }
+    }
+
+    private void drawBorder(Canvas canvas) {
+        if (mBorderPaint.getStrokeWidth() > 0) {
+            mShape.drawBorder(canvas, mBorderPaint);
+        }
+    }
+
+    private void drawTitles(Canvas canvas) {
+        // A custom silhouette keeps the titles inside it. The built-in shapes let them
+        // overflow, as they always did.
+        int save = 0;
+        boolean clip = mShapeType == SHAPE_TYPE_CUSTOM;
+        if (clip) {
+            save = canvas.save();
+            canvas.clipPath(mShape.getClipPath());
+        }
+        // Titles measure themselves only when their text, size or the view size changes.
+        mTopTitle.draw(canvas, mWidth, mHeight);
+        mCenterTitle.draw(canvas, mWidth, mHeight);
+        mBottomTitle.draw(canvas, mWidth, mHeight);
+        if (clip) {
+            canvas.restoreToCount(save);
+        }
+    }
+
+    /**
+     * Replay a static layer, recording it first if a setter invalidated it.
+     *
+     * @param titles Whether this is the layer over the wave, with the titles, or the one under
+     *               it, with the border.
+     */
+    private void drawStaticLayer(Canvas canvas, WaveStaticLayer layer, boolean titles) {
+        if (!layer.isValid(canvas)) {
+            boolean empty = titles ? !hasTitles() : mBorderPaint.getStrokeWidth() <= 0;
+            if (empty) {
+                layer.recordEmpty();
+            } else {
+                Canvas recording = layer.beginRecording(canvas, mWidth, mHeight);
+                if (titles) {
+                    drawTitles(recording);
+                } else {
+                    drawBorder(recording);
+                }
+                layer.endRecording();
+            }
+        }
+        layer.draw(canvas);
+    }
+
+    private boolean hasTitles() {
+        return !TextUtils.isEmpty(mTopTitle.getText()) || !TextUtils.isEmpty(mCenterTitle.getText())
+                || !TextUtils.isEmpty(mBottomTitle.getText());
+    }
+
+    /**
+     * The rows the water surface covers, where the picture changes while the wave moves:
+     * above them the shape is empty, below them the wave is solid.
+     *
+     * @return Whether there is a wave at all. If not, out is left untouched.
+     */
+    boolean getWaveBand(Rect out) {
+        if (!hasWave() || mHeight == 0) {
+            return false;
+        }
+        float surface = (1f - mWaterLevelRatio) * mHeight;
+        float amplitude = mAmplitudeRatio * getMaxAmplitudeScale() * mHeight
+                + Math.abs(mSurfaceTilt) * mWidth / 2f;
+        // Two extra rows for the anti-aliased crests and troughs.
+        int top = Math.max(0, (int) Math.floor(surface - amplitude) - 2);
+        int bottom = Math.min(mHeight, (int) Math.ceil(surface + amplitude) + 2);
+        if (top >= bottom) {
+            // The band lies outside the view.
+            top = bottom = Math.max(0, Math.min(mHeight, top));
+        }
+        out.set(0, top, mWidth, bottom);
+        return true;
+    }
+
+    /**
+     * Compute the geometry of the current shape, so that draw only has to issue draw calls.
+     * Must be called whenever the size, the shape or the border width changes.
+     */
+    private void updateShapeGeometry() {
+        if (mBatchDepth > 0) {
+            mPendingUpdates |= UPDATE_SHAPE_GEOMETRY;
+            return;
+        }
+        mGeneration++;
+        mShape.setBounds(mWidth, mHeight, mBorderPaint.getStrokeWidth());
+        mUnderLayer.invalidate();
+        mOverLayer.invalidate();
+    }
+
+    /**
+     * Group the layers and acquire a wave bitmap for every group. Groups whose waves did not
+     * change keep their bitmap.
+     */
+    private void updateWaveShader() {
+        if (mBatchDepth > 0) {
+            mPendingUpdates |= UPDATE_WAVE_SHADER;
+            return;
+        }
+        // IllegalArgumentException: width and height must be > 0 while loading Bitmap from View
+        // http://stackoverflow.com/questions/17605662/illegalargumentexception-width-and-height-must-be-0-while-loading-bitmap-from
+        mGeneration++;
+        int width = mWidth;
+        int height = mHeight;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        WaveLayer[] layers = mLayers;
+        int first = mBackWave ? 0 : layers.length - 1;
+        int groupCount = 0;
+        for (int i = first; i < layers.length; i++) {
+            if (i == first || !isSameGroup(layers[i - 1], layers[i])) {
+                groupCount++;
+            }
+        }
+
+        WaveBitmapCache cache = WaveBitmapCache.getInstance();
+        WaveGroup[] oldGroups = mWaveGroups;
+        WaveGroup[] groups = oldGroups.length == groupCount ? oldGroups : new WaveGroup[groupCount];
+        for (int g = 0; g < oldGroups.length; g++) {
+            WaveBitmapCache.Entry bitmap = oldGroups[g].mBitmap;
+            // Its width is the wave length, which the matrix can stretch to the new size.
+            if (bitmap != null && bitmap.getHeight() != height) {
+                // The old size is unlikely to come back, let the new bitmaps reuse its memory.
+                cache.releaseStale(bitmap);
+                oldGroups[g].mBitmap = null;
+                oldGroups[g].mShader = null;
+            }
+            if (g >= groupCount) {
+                oldGroups[g].release();
+            }
+        }
+
+        int start = first;
+        for (int g = 0; g < groupCount; g++) {
+            int end = start + 1;
+            while (end < layers.length && isSameGroup(layers[end - 1], layers[end])) {
+                end++;
+            }
+            WaveGroup group = g < oldGroups.length ? oldGroups[g] : new WaveGroup();
+            groups[g] = group;
+            group.mSpeed = layers[start].getSpeed();
+            group.mWaveLengthRatio = layers[start].getWaveLengthRatio();
+            group.mColor = layers[start].resolveColor(mWaveColor) | 0xFF000000;
+
+            // The bitmap is an alpha mask, only the alpha of every layer is baked in.
+            float[] waves = new float[(end - start) * 3];
+            for (int i = start; i < end; i++) {
+                int offset = (i - start) * 3;
+                waves[offset] = layers[i].getAmplitudeScale() * DEFAULT_AMPLITUDE_RATIO;
+                waves[offset + 1] = layers[i].getPhaseOffset();
+                waves[offset + 2] = Color.alpha(layers[i].resolveColor(mWaveColor)) / 255f;
+            }
+            int rasterWidth = getRasterWidth(group);
+            if (group.mBitmap == null || !group.mBitmap.matches(rasterWidth, height, waves)) {
+                // Acquire before releasing, so an unchanged entry is never evicted in between.
+                WaveBitmapCache.Entry waveBitmap = cache.acquire(rasterWidth, height, waves);
+                group.release();
+                group.mBitmap = waveBitmap;
+                // Use the bitamp to create the shader.
+                group.mShader = new BitmapShader(waveBitmap.getBitmap(), Shader.TileMode.REPEAT, Shader.TileMode.CLAMP);
+                group.mPaint.setShader(group.mShader);
+                mShaderBuilds++;
+            }
+            start = end;
+        }
+        mWaveGroups = groups;
+        mDefaultWaterLevel = height * DEFAULT_WATER_LEVEL_RATIO;
+        updateWavePaintColor();
+    }
+
+    private float getWavePeriod(WaveGroup group) {
+        return group.mWaveLengthRatio * mWaveLengthRatio * mWidth;
+    }
+
+    /**
+     * The width to rasterize one period of the group at: the width of its bitmap while stretching
+     * that stays within the quality band, the wave length otherwise.
+     */
+    private int getRasterWidth(WaveGroup group) {
+        float period = getWavePeriod(group);
+        WaveBitmapCache.Entry bitmap = group.mBitmap;
+        if (bitmap != null && bitmap.getHeight() == mHeight) {
+            float scale = period / bitmap.getWidth();
+            if (scale >= MIN_WAVE_LENGTH_SCALE && scale <= MAX_WAVE_LENGTH_SCALE) {
+                return bitmap.getWidth();
+            }
+        }
+        return Math.max(1, Math.min(Math.round(period), MAX_RASTER_WIDTH_RATIO * mWidth));
+    }
+
+    /**
+     * Consecutive layers that move together and share a color can be rasterized into one bitmap.
+     */
+    private boolean isSameGroup(WaveLayer a, WaveLayer b) {
+        return a.getSpeed() == b.getSpeed() && a.getWaveLengthRatio() == b.getWaveLengthRatio()
+                && ((a.resolveColor(mWaveColor) ^ b.resolveColor(mWaveColor)) & 0x00FFFFFF) == 0;
+    }
+
+    private float getMaxAmplitudeScale() {
+        float max = 0;
+        int first = mBackWave ? 0 : mLayers.length - 1;
+        for (int i = first; i < mLayers.length; i++) {
+            max = Math.max(max, mLayers[i].getAmplitudeScale());
+        }
+        return max;
+    }
+
+    private void updateWavePaintColor() {
+        if (mBatchDepth > 0) {
+            mPendingUpdates |= UPDATE_WAVE_PAINT_COLOR;
+            return;
+        }
+        mGeneration++;
+        for (int g = 0; g < mWaveGroups.length; g++) {
+            Paint paint = mWaveGroups[g].mPaint;
+            // The wave bitmap is an alpha mask, which the shader fills with the paint color.
+            // Its alpha is already in the mask.
+            paint.setColor(mWaveGroups[g].mColor);
+            // Composite the background under the back group within the same fill, instead of
+            // filling the shape a second time: DST_OVER puts the filter color under every pixel.
+            paint.setColorFilter(g > 0 || Color.alpha(mWaveBgColor) == 0
+                    ? null : new PorterDuffColorFilter(mWaveBgColor, PorterDuff.Mode.DST_OVER));
+        }
+    }
+
+    private void releaseWaveShader() {
+        for (WaveGroup group : mWaveGroups) {
+            group.release();
+        }
+    }
+
+    void setWaveBgColor(int color) {
+        mWaveBgColor = color;
+        updateWavePaintColor();
+    }
+
+    int getWaveBgColor() {
+        return mWaveBgColor;
+    }
+
+    void setWaveColor(int color) {
+        mWaveColor = color;
+        // Only a change of alpha, or of how the layers group, needs other wave bitmaps.
+        updateWaveShader();
+    }
+
+    int getWaveColor() {
+        return mWaveColor;
+    }
+
+    void setBorderWidth(float width) {
+        mBorderPaint.setStrokeWidth(width);
+        updateShapeGeometry();
+    }
+
+    Paint getBorderPaint() {
+        return mBorderPaint;
+    }
+
+    void setShapeType(int shapeType) {
+        mShapeType = shapeType;
+        mShape = WaveShapes.fromType(shapeType, mTriangleDirection, mIsRoundRectangle, mRoundRectangleXY);
+        updateShapeGeometry();
+    }
+
+    /**
+     * @return The ordinal of the {@link WaveLoadingView.ShapeType}, or {@link #SHAPE_TYPE_CUSTOM}.
+     */
+    int getShapeType() {
+        return mShapeType;
+    }
+
+    void setShape(WaveShape shape) {
+        if (shape == null) {
+            throw new IllegalArgumentException("shape must not be null, use setShapeType instead");
+        }
+        mShapeType = SHAPE_TYPE_CUSTOM;
+        mShape = shape;
+        updateShapeGeometry();
+    }
+
+    WaveShape getShape() {
+        return mShape;
+    }
+
+    void setAmplitudeRatio(float amplitudeRatio) {
+        mAmplitudeRatio = amplitudeRatio;
+        mGeneration++;
+    }
+
+    float getAmplitudeRatio() {
+        return mAmplitudeRatio;
+    }
+
+    /**
+     * Only rasterizes again once a wave bitmap would be stretched out of the quality band, so
+     * the wave length can be animated.
+     */
+    void setWaveLengthRatio(float waveLengthRatio) {
+        mWaveLengthRatio = waveLengthRatio;
+        mGeneration++;
+        for (WaveGroup group : mWaveGroups) {
+            if (group.mBitmap != null && getRasterWidth(group) != group.mBitmap.getWidth()) {
+                updateWaveShader();
+                return;
+            }
+        }
+    }
+
+    float getWaveLengthRatio() {
+        return mWaveLengthRatio;
+    }
+
+    void setWaterLevelRatio(float waterLevelRatio) {
+        if (mWaterLevelRatio != waterLevelRatio) {
+            mWaterLevelRatio = waterLevelRatio;
+            mGeneration++;
+        }
+    }
+
+    float getWaterLevelRatio() {
+        return mWaterLevelRatio;
+    }
+
+    void setSurfaceTilt(float tilt) {
+        if (mSurfaceTilt != tilt) {
+            mSurfaceTilt = tilt;
+            mGeneration++;
+        }
+    }
+
+    float getSurfaceTilt() {
+        return mSurfaceTilt;
+    }
+
+    void setWaveShiftRatio(float waveShiftRatio) {
+        if (waveShiftRatio < mWaveShiftRatio - 0.5f) {
+            // The shift wrapped around to the next period.
+            mWaveCycles = (mWaveCycles + 1) % WAVE_CYCLES;
+        }
+        mWaveShiftRatio = waveShiftRatio;
+    }
+
+    float getWaveShiftRatio() {
+        return mWaveShiftRatio;
+    }
+
+    /**
+     * Set the wave shift without counting periods, for frames drawn out of order.
+     */
+    void setWavePhase(int waveCycles, float waveShiftRatio) {
+        mWaveCycles = waveCycles;
+        mWaveShiftRatio = waveShiftRatio;
+    }
+
+    int getWaveCycles() {
+        return mWaveCycles;
+    }
+
+    /**
+     * @param layers The layers, from back to front. Null or empty for the default two waves.
+     */
+    void setWaveLayers(WaveLayer[] layers) {
+        mLayers = layers == null || layers.length == 0 ? DEFAULT_LAYERS : layers.clone();
+        updateWaveShader();
+    }
+
+    WaveLayer[] getWaveLayers() {
+        return mLayers.clone();
+    }
+
+    static WaveLayer[] getDefaultWaveLayers() {
+        return DEFAULT_LAYERS.clone();
+    }
+
+    /**
+     * Whether to draw the layers behind the front one. Switching it takes other wave bitmaps.
+     */
+    void setBackWave(boolean backWave) {
+        if (mBackWave != backWave) {
+            mBackWave = backWave;
+            updateWaveShader();
+        }
+    }
+
+    WaveTitle getTopTitle() {
+        return mTopTitle;
+    }
+
+    WaveTitle getCenterTitle() {
+        return mCenterTitle;
+    }
+
+    WaveTitle getBottomTitle() {
+        return mBottomTitle;
+    }
+
+    void setLayeredRendering(boolean layered) {
+        mLayeredRendering = layered;
+        if (!layered) {
+            mUnderLayer.release();
+            mOverLayer.release();
+        }
+    }
+
+    boolean isLayeredRendering() {
+        return mLayeredRendering;
+    }
+
+    /**
+     * Must be called after any change to what the static layers hold: the border and the titles.
+     */
+    void invalidateStaticLayers() {
+        mGeneration++;
+        mUnderLayer.invalidate();
+        mOverLayer.invalidate();
+    }
+
+    /**
+     * @return A number that changes with everything a frame shows but the wave shift, so that
+     * frames drawn for one generation can be replayed until it changes.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return How many wave shaders were created, one per wave group whose bitmap changed.
+     */
+    int getShaderBuildCount() {
+        return mShaderBuilds;
+    }
+
+    /**
+     * Layers drawn in one pass: one bitmap, shader, matrix and paint.
+     */
+    private static final class WaveGroup {
+        // The ANTI_ALIAS_FLAG bit AntiAliasing smooths out the edges of what is being drawn,
+        // but is has no impact on the interior of the shape.
+        final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        final Matrix mMatrix = new Matrix();
+        float mSpeed;
+        float mWaveLengthRatio;
+        // Opaque color of the layers, their alpha is in the bitmap.
+        int mColor;
+        // Shader containing repeated waves.
+        BitmapShader mShader;
+        // Bitmap behind mShader, shared with other views of the same waves.
+        WaveBitmapCache.Entry mBitmap;
+
+        void release() {
+            if (mBitmap != null) {
+                WaveBitmapCache.getInstance().release(mBitmap);
+                mBitmap = null;
+            }
+            mShader = null;
+            mPaint.setShader(null);
+        }
+    }
+
+    /**
+     * Paint.setTextSize(float textSize) default unit is px.
+     *
+     * @param spValue The real size of text
+     * @return int - A transplanted sp
+     */
+    static int sp2px(DisplayMetrics metrics, float spValue) {
+        final float fontScale = metrics.scaledDensity;
+        return (int) (spValue * fontScale + 0.5f);
+    }
+
+    static int dp2px(DisplayMetrics metrics, float dp) {
+        final float scale = metrics.density;
+        return (int) (dp * scale + 0.5f);
+    }
+}
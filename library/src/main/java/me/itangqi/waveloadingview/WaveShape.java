@@ -0,0 +1,45 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * The silhouette the wave fills, see {@link WaveLoadingView#setShape(WaveShape)} and
+ * {@link WaveShapes} for the built-in ones.
+ * <p>
+ * A shape computes its geometry in {@link #setBounds(int, int, float)}, which is only called
+ * when the size or the border width changes, so that drawing it every frame is just draw calls.
+ * An instance keeps the geometry of one view, it must not be shared between views.
+ */
+public interface WaveShape {
+
+    /**
+     * Compute the geometry for a view of the given size.
+     *
+     * @param borderWidth Width of the border stroke, the fill should stay inside it.
+     */
+    void setBounds(int width, int height, float borderWidth);
+
+    /**
+     * Fill the shape with the wave paint. Called every frame, must not allocate.
+     */
+    void drawFill(Canvas canvas, Paint paint);
+
+    /**
+     * Stroke the border with the border paint, or draw nothing if the shape has no border.
+     */
+    void drawBorder(Canvas canvas, Paint paint);
+
+    /**
+     * @return The outline of the fill, which the titles of a shape set with
+     * {@link WaveLoadingView#setShape(WaveShape)} are clipped to. Owned by the shape, valid
+     * until the next {@link #setBounds(int, int, float)}.
+     */
+    Path getClipPath();
+
+    /**
+     * @return Whether the view should measure itself square around the shape.
+     */
+    boolean isSquare();
+}
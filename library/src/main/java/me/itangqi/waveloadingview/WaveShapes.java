@@ -0,0 +1,343 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import me.itangqi.waveloadingview.core.WaveGeometry;
+
+/**
+ * The built-in {@link WaveShape}s: the ones of {@link WaveLoadingView.ShapeType}, and
+ * silhouettes scaled from a path. Every call returns a new shape.
+ */
+public final class WaveShapes {
+    private WaveShapes() {
+    }
+
+    public static WaveShape triangle(WaveLoadingView.TriangleDirection direction) {
+        return new TriangleShape(direction.ordinal());
+    }
+
+    public static WaveShape circle() {
+        return new CircleShape();
+    }
+
+    public static WaveShape square() {
+        return new SquareShape();
+    }
+
+    /**
+     * A rectangle filling the view, which measures itself to any aspect ratio.
+     */
+    public static WaveShape rectangle() {
+        return new RectangleShape(0);
+    }
+
+    public static WaveShape roundRectangle(float radius) {
+        return new RectangleShape(radius);
+    }
+
+    /**
+     * A silhouette from path data, scaled uniformly to fit the view and centered in it.
+     *
+     * @param path           The outline, copied. Its fill type decides what is inside.
+     * @param viewportWidth  Width of the coordinate space the path is drawn in.
+     * @param viewportHeight Height of the coordinate space the path is drawn in.
+     */
+    public static WaveShape path(Path path, float viewportWidth, float viewportHeight) {
+        if (viewportWidth <= 0 || viewportHeight <= 0) {
+            throw new IllegalArgumentException("viewport must not be empty: " + viewportWidth + "x" + viewportHeight);
+        }
+        return new PathShape(new Path(path), viewportWidth, viewportHeight);
+    }
+
+    public static WaveShape heart() {
+        Path path = new Path();
+        path.moveTo(50, 92);
+        path.cubicTo(20, 70, 0, 50, 0, 28);
+        path.cubicTo(0, 12, 12, 0, 27, 0);
+        path.cubicTo(38, 0, 46, 6, 50, 16);
+        path.cubicTo(54, 6, 62, 0, 73, 0);
+        path.cubicTo(88, 0, 100, 12, 100, 28);
+        path.cubicTo(100, 50, 80, 70, 50, 92);
+        path.close();
+        return new PathShape(path, 100, 92);
+    }
+
+    public static WaveShape droplet() {
+        Path path = new Path();
+        path.moveTo(35, 0);
+        path.cubicTo(35, 0, 70, 40, 70, 65);
+        path.cubicTo(70, 84, 54, 100, 35, 100);
+        path.cubicTo(16, 100, 0, 84, 0, 65);
+        path.cubicTo(0, 40, 35, 0, 35, 0);
+        path.close();
+        return new PathShape(path, 70, 100);
+    }
+
+    public static WaveShape battery() {
+        Path path = new Path();
+        // The terminal, then the body under it.
+        path.addRoundRect(new RectF(20, 0, 40, 8), 3, 3, Path.Direction.CW);
+        path.addRoundRect(new RectF(0, 8, 60, 100), 8, 8, Path.Direction.CW);
+        return new PathShape(path, 60, 100);
+    }
+
+    /**
+     * The shape of the wlv_shapeType and related attributes.
+     */
+    static WaveShape fromType(int shapeType, int triangleDirection, boolean roundRectangle, int roundRectangleXY) {
+        switch (shapeType) {
+            case 0:
+                return new TriangleShape(triangleDirection);
+            case 1:
+                return new CircleShape();
+            case 2:
+                return new SquareShape();
+            case 3:
+                return new RectangleShape(roundRectangle ? roundRectangleXY : 0);
+            default:
+                // Draws nothing, as unknown types always did.
+                return new PathShape(new Path(), 1, 1);
+        }
+    }
+
+    /**
+     * Keeps the clip path, built on first use after every change of bounds.
+     */
+    private abstract static class BaseShape implements WaveShape {
+        private final Path mClipPath = new Path();
+        private boolean mClipPathValid;
+
+        @Override
+        public final void setBounds(int width, int height, float borderWidth) {
+            mClipPathValid = false;
+            onBoundsChanged(width, height, borderWidth);
+        }
+
+        @Override
+        public final Path getClipPath() {
+            if (!mClipPathValid) {
+                mClipPath.reset();
+                buildClipPath(mClipPath);
+                mClipPathValid = true;
+            }
+            return mClipPath;
+        }
+
+        @Override
+        public boolean isSquare() {
+            return true;
+        }
+
+        abstract void onBoundsChanged(int width, int height, float borderWidth);
+
+        abstract void buildClipPath(Path path);
+    }
+
+    /**
+     * Border-less, and its fill is a path anyway.
+     */
+    private static final class TriangleShape extends BaseShape {
+        private final int mDirection;
+        private final Path mPath = new Path();
+        private final int[] mVertices = new int[6];
+
+        TriangleShape(int direction) {
+            mDirection = direction;
+        }
+
+        @Override
+        void onBoundsChanged(int width, int height, float borderWidth) {
+            mPath.reset();
+            if (WaveGeometry.equilateralTriangle(mVertices, width, height, mDirection)) {
+                mPath.moveTo(mVertices[0], mVertices[1]);
+                mPath.lineTo(mVertices[2], mVertices[3]);
+                mPath.lineTo(mVertices[4], mVertices[5]);
+            }
+        }
+
+        @Override
+        public void drawFill(Canvas canvas, Paint paint) {
+            canvas.drawPath(mPath, paint);
+        }
+
+        @Override
+        public void drawBorder(Canvas canvas, Paint paint) {
+            // Triangle currently does not support the border settings.
+        }
+
+        @Override
+        void buildClipPath(Path path) {
+            path.set(mPath);
+        }
+    }
+
+    private static final class CircleShape extends BaseShape {
+        private float mCenterX;
+        private float mCenterY;
+        private float mRadius;
+        private float mBorderRadius;
+
+        @Override
+        void onBoundsChanged(int width, int height, float borderWidth) {
+            mCenterX = width / 2f;
+            mCenterY = height / 2f;
+            mBorderRadius = (width - borderWidth) / 2f - 1f;
+            mRadius = width / 2f - borderWidth;
+        }
+
+        @Override
+        public void drawFill(Canvas canvas, Paint paint) {
+            canvas.drawCircle(mCenterX, mCenterY, mRadius, paint);
+        }
+
+        @Override
+        public void drawBorder(Canvas canvas, Paint paint) {
+            canvas.drawCircle(mCenterX, mCenterY, mBorderRadius, paint);
+        }
+
+        @Override
+        void buildClipPath(Path path) {
+            path.addCircle(mCenterX, mCenterY, Math.max(0, mRadius), Path.Direction.CW);
+        }
+    }
+
+    private static final class SquareShape extends BaseShape {
+        private final RectF mRect = new RectF();
+        private final RectF mBorderRect = new RectF();
+
+        @Override
+        void onBoundsChanged(int width, int height, float borderWidth) {
+            mRect.set(borderWidth, borderWidth, width - borderWidth, height - borderWidth);
+            setBorderRect(mBorderRect, width, height, borderWidth);
+        }
+
+        @Override
+        public void drawFill(Canvas canvas, Paint paint) {
+            canvas.drawRect(mRect, paint);
+        }
+
+        @Override
+        public void drawBorder(Canvas canvas, Paint paint) {
+            canvas.drawRect(mBorderRect, paint);
+        }
+
+        @Override
+        void buildClipPath(Path path) {
+            path.addRect(mRect, Path.Direction.CW);
+        }
+    }
+
+    /**
+     * Plain rectangles have no border, round ones stroke their border along the fill.
+     */
+    private static final class RectangleShape extends BaseShape {
+        private final float mRadius;
+        private final RectF mRect = new RectF();
+
+        RectangleShape(float radius) {
+            mRadius = radius;
+        }
+
+        @Override
+        void onBoundsChanged(int width, int height, float borderWidth) {
+            if (borderWidth > 0) {
+                setBorderRect(mRect, width, height, borderWidth);
+            } else {
+                mRect.set(0, 0, width, height);
+            }
+        }
+
+        @Override
+        public void drawFill(Canvas canvas, Paint paint) {
+            if (mRadius > 0) {
+                canvas.drawRoundRect(mRect, mRadius, mRadius, paint);
+            } else {
+                canvas.drawRect(mRect, paint);
+            }
+        }
+
+        @Override
+        public void drawBorder(Canvas canvas, Paint paint) {
+            if (mRadius > 0) {
+                canvas.drawRoundRect(mRect, mRadius, mRadius, paint);
+            }
+        }
+
+        @Override
+        void buildClipPath(Path path) {
+            path.addRoundRect(mRect, mRadius, mRadius, Path.Direction.CW);
+        }
+
+        @Override
+        public boolean isSquare() {
+            return false;
+        }
+    }
+
+    /**
+     * The path is transformed once per size, the fill inside the border and the border along
+     * the middle of its stroke.
+     */
+    private static final class PathShape extends BaseShape {
+        private final Path mSource;
+        private final float mViewportWidth;
+        private final float mViewportHeight;
+        private final Path mFillPath = new Path();
+        private final Path mBorderPath = new Path();
+        private final Matrix mMatrix = new Matrix();
+        private final RectF mViewport;
+        private final RectF mBounds = new RectF();
+
+        PathShape(Path source, float viewportWidth, float viewportHeight) {
+            mSource = source;
+            mViewportWidth = viewportWidth;
+            mViewportHeight = viewportHeight;
+            mViewport = new RectF(0, 0, viewportWidth, viewportHeight);
+        }
+
+        @Override
+        void onBoundsChanged(int width, int height, float borderWidth) {
+            mBounds.set(borderWidth, borderWidth, width - borderWidth, height - borderWidth);
+            fit(mFillPath);
+            mBounds.set(borderWidth / 2f, borderWidth / 2f, width - borderWidth / 2f, height - borderWidth / 2f);
+            fit(mBorderPath);
+        }
+
+        private void fit(Path out) {
+            mMatrix.setRectToRect(mViewport, mBounds, Matrix.ScaleToFit.CENTER);
+            mSource.transform(mMatrix, out);
+        }
+
+        @Override
+        public void drawFill(Canvas canvas, Paint paint) {
+            canvas.drawPath(mFillPath, paint);
+        }
+
+        @Override
+        public void drawBorder(Canvas canvas, Paint paint) {
+            canvas.drawPath(mBorderPath, paint);
+        }
+
+        @Override
+        void buildClipPath(Path path) {
+            path.set(mFillPath);
+        }
+
+        @Override
+        public boolean isSquare() {
+            return mViewportWidth == mViewportHeight;
+        }
+    }
+
+    /**
+     * Where a border is stroked, inset by half its width so that it is not clipped.
+     */
+    private static void setBorderRect(RectF rect, int width, int height, float borderWidth) {
+        rect.set(borderWidth / 2f, borderWidth / 2f,
+                width - borderWidth / 2f - 0.5f, height - borderWidth / 2f - 0.5f);
+    }
+}
@@ -0,0 +1,130 @@
+package me.itangqi.waveloadingview;
+
+/**
+ * Water that sloshes when its level changes, as damped springs for the first modes of the tank.
+ * <p>
+ * The heave mode is the level itself, which follows the target with a slight overshoot. The
+ * tilt mode is the slope of the surface, kicked by every change of level, which rocks back and
+ * forth until it settles. Each mode is a mass-spring-damper integrated with a fixed timestep, so
+ * the motion does not depend on the frame rate, over preallocated arrays, so a step allocates
+ * nothing. Once every mode is at rest, stepping does nothing until the next change of level.
+ */
+final class WaveSlosh {
+    private static final int HEAVE = 0;
+    private static final int TILT = 1;
+    private static final int MODES = 2;
+
+    // Fixed timestep, small enough for the stiffest mode to stay stable.
+    private static final long STEP_MILLIS = 4;
+    private static final float STEP_SECONDS = STEP_MILLIS / 1000f;
+    // Longest span simulated in one frame, a long stall just settles the water.
+    private static final long MAX_FRAME_MILLIS = 100;
+    // Slope per level change, kicked into the tilt mode.
+    private static final float TILT_KICK = 4f;
+    // Below this, in level or slope and per second, a mode is at rest.
+    private static final float REST_THRESHOLD = 1e-3f;
+
+    // Natural frequency in radians per second and damping ratio of every mode.
+    private final float[] mOmega = {2f * (float) Math.PI * 1.1f, 2f * (float) Math.PI * 1.6f};
+    private final float[] mZeta = {0.55f, 0.18f};
+    // Displacement of every mode from rest, and its velocity.
+    private final float[] mPosition = new float[MODES];
+    private final float[] mVelocity = new float[MODES];
+
+    private float mTarget;
+    private boolean mResting = true;
+    // Time simulated up to, and time left over for the next step.
+    private long mTime;
+    private long mPendingMillis;
+
+    /**
+     * Move the water to target, sloshing on its way there.
+     *
+     * @param current The current level.
+     * @param now     Animation time, in milliseconds.
+     */
+    void retarget(float current, float target, long now) {
+        if (mResting) {
+            mTime = now;
+            mPendingMillis = 0;
+            mPosition[HEAVE] = current - target;
+        } else {
+            // Keep the level where it is, only the spring moves.
+            mPosition[HEAVE] += mTarget - target;
+        }
+        mVelocity[TILT] += TILT_KICK * (target - current);
+        mTarget = target;
+        mResting = false;
+    }
+
+    /**
+     * Put the water at target, with a flat and still surface.
+     */
+    void snap(float target) {
+        mTarget = target;
+        settle();
+    }
+
+    /**
+     * Run the fixed steps up to now.
+     *
+     * @return Whether the water still moves.
+     */
+    boolean advance(long now) {
+        if (mResting) {
+            return false;
+        }
+        mPendingMillis += Math.min(MAX_FRAME_MILLIS, Math.max(0, now - mTime));
+        mTime = now;
+        while (mPendingMillis >= STEP_MILLIS) {
+            mPendingMillis -= STEP_MILLIS;
+            step();
+        }
+        if (isAtRest()) {
+            settle();
+        }
+        return !mResting;
+    }
+
+    private void step() {
+        for (int i = 0; i < MODES; i++) {
+            float omega = mOmega[i];
+            float acceleration = -omega * omega * mPosition[i] - 2f * mZeta[i] * omega * mVelocity[i];
+            // Semi-implicit Euler: the new velocity moves the position, which keeps it stable.
+            mVelocity[i] += acceleration * STEP_SECONDS;
+            mPosition[i] += mVelocity[i] * STEP_SECONDS;
+        }
+    }
+
+    private boolean isAtRest() {
+        for (int i = 0; i < MODES; i++) {
+            if (Math.abs(mPosition[i]) > REST_THRESHOLD || Math.abs(mVelocity[i]) > REST_THRESHOLD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void settle() {
+        for (int i = 0; i < MODES; i++) {
+            mPosition[i] = 0;
+            mVelocity[i] = 0;
+        }
+        mResting = true;
+    }
+
+    boolean isResting() {
+        return mResting;
+    }
+
+    float getLevel() {
+        return mTarget + mPosition[HEAVE];
+    }
+
+    /**
+     * @return Slope of the surface, in rows per column.
+     */
+    float getTilt() {
+        return mPosition[TILT];
+    }
+}
@@ -0,0 +1,106 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Picture;
+import android.os.Build;
+
+/**
+ * Content that only changes when a setter is called, recorded once and replayed every frame
+ * as a single draw call until it is invalidated.
+ * <p>
+ * It records into a {@link Picture}, which software canvases can replay on every version and
+ * hardware canvases from Marshmallow on. Before that, hardware canvases get an offscreen bitmap.
+ * Both are kept, so that a view drawn on a hardware canvas while it bakes frames on a software
+ * one records each of them once, instead of replacing one with the other on every switch.
+ */
+final class WaveStaticLayer {
+    private final Picture mPicture = new Picture();
+    private Bitmap mBitmap;
+    private Canvas mBitmapCanvas;
+    private boolean mRecording;
+    private boolean mRecordingBitmap;
+
+    // Both hold the same content while valid, the layer is only recorded between invalidations.
+    private boolean mPictureValid;
+    private boolean mBitmapValid;
+    private boolean mEmpty;
+
+    /**
+     * @return Whether the recorded content can be drawn on target as it is.
+     */
+    boolean isValid(Canvas target) {
+        return needsBitmap(target) ? mBitmapValid : mPictureValid;
+    }
+
+    void invalidate() {
+        mPictureValid = false;
+        mBitmapValid = false;
+    }
+
+    /**
+     * Record nothing, drawing the layer is then a no-op.
+     */
+    void recordEmpty() {
+        mPictureValid = true;
+        mBitmapValid = true;
+        mEmpty = true;
+    }
+
+    /**
+     * @return The canvas to draw the content on, until {@link #endRecording()}.
+     */
+    Canvas beginRecording(Canvas target, int width, int height) {
+        mRecordingBitmap = needsBitmap(target);
+        mRecording = true;
+        if (!mRecordingBitmap) {
+            return mPicture.beginRecording(width, height);
+        }
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBitmapCanvas = new Canvas(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        return mBitmapCanvas;
+    }
+
+    void endRecording() {
+        if (!mRecording) {
+            return;
+        }
+        mRecording = false;
+        if (mRecordingBitmap) {
+            mBitmapValid = true;
+        } else {
+            mPicture.endRecording();
+            mPictureValid = true;
+        }
+        mEmpty = false;
+    }
+
+    void draw(Canvas canvas) {
+        if (mEmpty) {
+            return;
+        }
+        if (needsBitmap(canvas)) {
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        } else {
+            canvas.drawPicture(mPicture);
+        }
+    }
+
+    /**
+     * Drop the offscreen bitmap, if any. The layer records again on its next use.
+     */
+    void release() {
+        mBitmap = null;
+        mBitmapCanvas = null;
+        invalidate();
+    }
+
+    private static boolean needsBitmap(Canvas target) {
+        return target.isHardwareAccelerated() && Build.VERSION.SDK_INT < Build.VERSION_CODES.M;
+    }
+}
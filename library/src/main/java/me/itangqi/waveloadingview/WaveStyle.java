@@ -0,0 +1,206 @@
+package me.itangqi.waveloadingview;
+
+/**
+ * The colors and shape of a gauge, to theme any number of them in one step each, see
+ * {@link WaveLoadingView#applyStyle(WaveStyle)}. Only the properties set on the builder are
+ * applied, the others keep their value. Immutable, so one style can be shared by all gauges.
+ */
+public final class WaveStyle {
+    static final int WAVE_COLOR = 1;
+    static final int WAVE_BG_COLOR = 1 << 1;
+    static final int BORDER_COLOR = 1 << 2;
+    static final int BORDER_WIDTH = 1 << 3;
+    static final int TOP_TITLE_COLOR = 1 << 4;
+    static final int CENTER_TITLE_COLOR = 1 << 5;
+    static final int BOTTOM_TITLE_COLOR = 1 << 6;
+    static final int SHAPE_TYPE = 1 << 7;
+    static final int WAVE_LAYERS = 1 << 8;
+
+    private final int mSet;
+    private final int mWaveColor;
+    private final int mWaveBgColor;
+    private final int mBorderColor;
+    private final float mBorderWidth;
+    private final int mTopTitleColor;
+    private final int mCenterTitleColor;
+    private final int mBottomTitleColor;
+    private final WaveLoadingView.ShapeType mShapeType;
+    private final WaveLayer[] mWaveLayers;
+
+    private WaveStyle(Builder builder) {
+        mSet = builder.mSet;
+        mWaveColor = builder.mWaveColor;
+        mWaveBgColor = builder.mWaveBgColor;
+        mBorderColor = builder.mBorderColor;
+        mBorderWidth = builder.mBorderWidth;
+        mTopTitleColor = builder.mTopTitleColor;
+        mCenterTitleColor = builder.mCenterTitleColor;
+        mBottomTitleColor = builder.mBottomTitleColor;
+        mShapeType = builder.mShapeType;
+        mWaveLayers = builder.mWaveLayers;
+    }
+
+    boolean has(int property) {
+        return (mSet & property) != 0;
+    }
+
+    /**
+     * Set the properties of this style on the renderer, which should be in a batch.
+     */
+    void applyTo(WaveRenderer renderer) {
+        if (has(WAVE_COLOR)) {
+            renderer.setWaveColor(mWaveColor);
+        }
+        if (has(WAVE_BG_COLOR)) {
+            renderer.setWaveBgColor(mWaveBgColor);
+        }
+        if (has(BORDER_COLOR)) {
+            renderer.getBorderPaint().setColor(mBorderColor);
+        }
+        if (has(BORDER_WIDTH)) {
+            renderer.setBorderWidth(mBorderWidth);
+        }
+        if (has(TOP_TITLE_COLOR)) {
+            renderer.getTopTitle().getPaint().setColor(mTopTitleColor);
+        }
+        if (has(CENTER_TITLE_COLOR)) {
+            renderer.getCenterTitle().getPaint().setColor(mCenterTitleColor);
+        }
+        if (has(BOTTOM_TITLE_COLOR)) {
+            renderer.getBottomTitle().getPaint().setColor(mBottomTitleColor);
+        }
+        if (has(SHAPE_TYPE)) {
+            renderer.setShapeType(mShapeType.ordinal());
+        }
+        if (has(WAVE_LAYERS)) {
+            renderer.setWaveLayers(mWaveLayers);
+        }
+    }
+
+    public Builder buildUpon() {
+        return new Builder().setStyle(this);
+    }
+
+    public static final class Builder {
+        private int mSet;
+        private int mWaveColor;
+        private int mWaveBgColor;
+        private int mBorderColor;
+        private float mBorderWidth;
+        private int mTopTitleColor;
+        private int mCenterTitleColor;
+        private int mBottomTitleColor;
+        private WaveLoadingView.ShapeType mShapeType;
+        private WaveLayer[] mWaveLayers;
+
+        public Builder setWaveColor(int color) {
+            mWaveColor = color;
+            mSet |= WAVE_COLOR;
+            return this;
+        }
+
+        public Builder setWaveBgColor(int color) {
+            mWaveBgColor = color;
+            mSet |= WAVE_BG_COLOR;
+            return this;
+        }
+
+        public Builder setBorderColor(int color) {
+            mBorderColor = color;
+            mSet |= BORDER_COLOR;
+            return this;
+        }
+
+        /**
+         * @param width Border width, in pixels like {@link WaveLoadingView#setBorderWidth(float)}.
+         */
+        public Builder setBorderWidth(float width) {
+            mBorderWidth = width;
+            mSet |= BORDER_WIDTH;
+            return this;
+        }
+
+        public Builder setTopTitleColor(int color) {
+            mTopTitleColor = color;
+            mSet |= TOP_TITLE_COLOR;
+            return this;
+        }
+
+        public Builder setCenterTitleColor(int color) {
+            mCenterTitleColor = color;
+            mSet |= CENTER_TITLE_COLOR;
+            return this;
+        }
+
+        public Builder setBottomTitleColor(int color) {
+            mBottomTitleColor = color;
+            mSet |= BOTTOM_TITLE_COLOR;
+            return this;
+        }
+
+        /**
+         * Color all three titles.
+         */
+        public Builder setTitleColor(int color) {
+            return setTopTitleColor(color).setCenterTitleColor(color).setBottomTitleColor(color);
+        }
+
+        public Builder setShapeType(WaveLoadingView.ShapeType shapeType) {
+            if (shapeType == null) {
+                throw new IllegalArgumentException("shapeType must not be null");
+            }
+            mShapeType = shapeType;
+            mSet |= SHAPE_TYPE;
+            return this;
+        }
+
+        /**
+         * @see WaveLoadingView#setWaveLayers(WaveLayer...)
+         */
+        public Builder setWaveLayers(WaveLayer... layers) {
+            mWaveLayers = layers == null ? null : layers.clone();
+            mSet |= WAVE_LAYERS;
+            return this;
+        }
+
+        /**
+         * Take the properties the style sets, over those already set here.
+         */
+        public Builder setStyle(WaveStyle style) {
+            if (style.has(WAVE_COLOR)) {
+                setWaveColor(style.mWaveColor);
+            }
+            if (style.has(WAVE_BG_COLOR)) {
+                setWaveBgColor(style.mWaveBgColor);
+            }
+            if (style.has(BORDER_COLOR)) {
+                setBorderColor(style.mBorderColor);
+            }
+            if (style.has(BORDER_WIDTH)) {
+                setBorderWidth(style.mBorderWidth);
+            }
+            if (style.has(TOP_TITLE_COLOR)) {
+                setTopTitleColor(style.mTopTitleColor);
+            }
+            if (style.has(CENTER_TITLE_COLOR)) {
+                setCenterTitleColor(style.mCenterTitleColor);
+            }
+            if (style.has(BOTTOM_TITLE_COLOR)) {
+                setBottomTitleColor(style.mBottomTitleColor);
+            }
+            if (style.has(SHAPE_TYPE)) {
+                setShapeType(style.mShapeType);
+            }
+            if (style.has(WAVE_LAYERS)) {
+                // Already a copy, and never modified.
+                mWaveLayers = style.mWaveLayers;
+                mSet |= WAVE_LAYERS;
+            }
+            return this;
+        }
+
+        public WaveStyle build() {
+            return new WaveStyle(this);
+        }
+    }
+}
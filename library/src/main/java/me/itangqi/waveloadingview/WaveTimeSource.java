@@ -0,0 +1,67 @@
+package me.itangqi.waveloadingview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+
+/**
+ * Where WaveLoadingView reads the time and schedules its own frames, so that tests can drive
+ * it through simulated frames instead of the wall clock.
+ * <p>
+ * The animators of {@link WaveLoadingView.AnimationMode#ANIMATOR} keep the platform's clock,
+ * {@link WaveLoadingView.AnimationMode#FRAME_TIME} and the slosh simulation run entirely on
+ * this one.
+ */
+interface WaveTimeSource {
+    // Frame delay before Jelly Bean, which has no animation frames to post to.
+    long FALLBACK_FRAME_MILLIS = 16;
+
+    WaveTimeSource SYSTEM = new WaveTimeSource() {
+        @Override
+        public long animationTimeMillis() {
+            return AnimationUtils.currentAnimationTimeMillis();
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        @Override
+        public void postFrame(View view, Runnable frame, long delayMillis) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                view.postDelayed(frame, Math.max(FALLBACK_FRAME_MILLIS, delayMillis));
+            } else if (delayMillis > 0) {
+                view.postOnAnimationDelayed(frame, delayMillis);
+            } else {
+                view.postOnAnimation(frame);
+            }
+        }
+
+        @Override
+        public void removeFrame(View view, Runnable frame) {
+            view.removeCallbacks(frame);
+        }
+    };
+
+    /**
+     * @return The time animations are computed from, in milliseconds.
+     */
+    long animationTimeMillis();
+
+    /**
+     * @return The time now, even in the middle of a frame, on the clock of
+     * {@link #animationTimeMillis()} and of the frame delays.
+     */
+    long uptimeMillis();
+
+    /**
+     * Run frame on the next animation frame of view, at least delayMillis from now.
+     */
+    void postFrame(View view, Runnable frame, long delayMillis);
+
+    void removeFrame(View view, Runnable frame);
+}
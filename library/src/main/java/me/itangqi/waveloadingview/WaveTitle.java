@@ -0,0 +1,88 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextUtils;
+
+/**
+ * One of the titles drawn over the wave, with a fill and a stroke paint.
+ * <p>
+ * Its position only depends on the text, the text size and the view size, so it is
+ * measured once and cached until one of them changes. Drawing is then just two drawText calls.
+ */
+final class WaveTitle {
+    private final Paint mPaint;
+    private final Paint mStrokePaint;
+    // Where the title sits, as a fraction of the view height.
+    private final float mPositionRatio;
+    // Whether the text is centered on that line, or sits on it as its baseline.
+    private final boolean mCenterOnPosition;
+
+    private String mText;
+
+    // Cached layout, valid for mLayoutWidth x mLayoutHeight.
+    private boolean mLayoutValid;
+    private int mLayoutWidth;
+    private int mLayoutHeight;
+    private float mX;
+    private float mY;
+    private float mStrokeY;
+
+    WaveTitle(Paint paint, Paint strokePaint, float positionRatio, boolean centerOnPosition) {
+        mPaint = paint;
+        mStrokePaint = strokePaint;
+        mPositionRatio = positionRatio;
+        mCenterOnPosition = centerOnPosition;
+    }
+
+    Paint getPaint() {
+        return mPaint;
+    }
+
+    Paint getStrokePaint() {
+        return mStrokePaint;
+    }
+
+    String getText() {
+        return mText;
+    }
+
+    void setText(String text) {
+        mText = text;
+        mLayoutValid = false;
+    }
+
+    void setTextSize(float textSize) {
+        mPaint.setTextSize(textSize);
+        mStrokePaint.setTextSize(textSize);
+        mLayoutValid = false;
+    }
+
+    void draw(Canvas canvas, int width, int height) {
+        if (TextUtils.isEmpty(mText)) {
+            return;
+        }
+        if (!mLayoutValid || width != mLayoutWidth || height != mLayoutHeight) {
+            layout(width, height);
+        }
+        // Draw the stroke of the text
+        canvas.drawText(mText, mX, mStrokeY, mStrokePaint);
+        // Draw the text
+        canvas.drawText(mText, mX, mY, mPaint);
+    }
+
+    private void layout(int width, int height) {
+        float line = height * mPositionRatio;
+        mX = (width - mPaint.measureText(mText)) / 2;
+        if (mCenterOnPosition) {
+            mY = line - (mPaint.descent() + mPaint.ascent()) / 2;
+            mStrokeY = line - (mStrokePaint.descent() + mStrokePaint.ascent()) / 2;
+        } else {
+            mY = line;
+            mStrokeY = line;
+        }
+        mLayoutWidth = width;
+        mLayoutHeight = height;
+        mLayoutValid = true;
+    }
+}
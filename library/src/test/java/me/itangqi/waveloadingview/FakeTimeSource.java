@@ -0,0 +1,77 @@
+package me.itangqi.waveloadingview;
+
+import android.view.View;
+
+/**
+ * A clock that only moves when the test says so. Holds the frames a view asks for, and runs
+ * them once the clock reaches them.
+ */
+class FakeTimeSource implements WaveTimeSource {
+    // More than a view ever has pending: its wave frame and its slosh frame.
+    private static final int MAX_FRAMES = 4;
+
+    private long mNowMillis;
+    private final Runnable[] mFrames = new Runnable[MAX_FRAMES];
+    private final long[] mFrameDueMillis = new long[MAX_FRAMES];
+
+    @Override
+    public long animationTimeMillis() {
+        return mNowMillis;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return mNowMillis;
+    }
+
+    @Override
+    public void postFrame(View view, Runnable frame, long delayMillis) {
+        for (int i = 0; i < MAX_FRAMES; i++) {
+            if (mFrames[i] == null) {
+                mFrames[i] = frame;
+                mFrameDueMillis[i] = mNowMillis + delayMillis;
+                return;
+            }
+        }
+        throw new IllegalStateException("Too many frames pending");
+    }
+
+    @Override
+    public void removeFrame(View view, Runnable frame) {
+        for (int i = 0; i < MAX_FRAMES; i++) {
+            if (mFrames[i] == frame) {
+                mFrames[i] = null;
+            }
+        }
+    }
+
+    boolean hasPendingFrame() {
+        for (Runnable pending : mFrames) {
+            if (pending != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the clock forward, and run the pending frames that are due. Frames they post run
+     * on a later advance at the earliest, like on the next vsync.
+     */
+    void advance(long millis) {
+        mNowMillis += millis;
+        int due = 0;
+        for (int i = 0; i < MAX_FRAMES; i++) {
+            if (mFrames[i] != null && mNowMillis >= mFrameDueMillis[i]) {
+                due |= 1 << i;
+            }
+        }
+        for (int i = 0; i < MAX_FRAMES; i++) {
+            Runnable frame = mFrames[i];
+            if ((due & 1 << i) != 0 && frame != null) {
+                mFrames[i] = null;
+                frame.run();
+            }
+        }
+    }
+}
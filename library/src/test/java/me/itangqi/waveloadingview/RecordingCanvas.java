@@ -0,0 +1,85 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * A canvas that only counts the draw calls it receives, so tests measure the view and not
+ * the graphics stack.
+ */
+class RecordingCanvas extends Canvas {
+    int drawCount;
+    // The last paint drawn with a shader, which is the wave.
+    Paint shaderPaint;
+    boolean hardwareAccelerated;
+    // The last path clipped to.
+    Path clipPath;
+
+    @Override
+    public boolean isHardwareAccelerated() {
+        return hardwareAccelerated;
+    }
+
+    @Override
+    public boolean clipPath(Path path) {
+        clipPath = path;
+        return true;
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        drawShape(paint);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        drawShape(paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        drawShape(paint);
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        drawShape(paint);
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        drawShape(paint);
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        drawCount++;
+    }
+
+    @Override
+    public void drawPicture(Picture picture) {
+        drawCount++;
+    }
+
+    private void drawShape(Paint paint) {
+        drawCount++;
+        if (paint.getShader() != null) {
+            shaderPaint = paint;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Renders frames into a bitmap the way an app widget would, one per update.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, shadows = {WaveShadows.NoAllocMatrix.class, WaveShadows.AlphaBitmap.class})
+public class WaveBitmapRendererTest {
+    private static final int SIZE = 300;
+    private static final int FRAMES = 100;
+
+    private WaveBitmapRenderer mRenderer;
+    private Bitmap mBitmap;
+
+    @Before
+    public void setUp() {
+        mRenderer = new WaveBitmapRenderer(RuntimeEnvironment.application.getResources().getDisplayMetrics());
+        mRenderer.setBorderWidth(4);
+        mRenderer.setCenterTitle("50%");
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void renderIntoTheSameBitmap_rebuildsNoShader() {
+        mRenderer.render(mBitmap);
+        int builds = mRenderer.getShaderBuildCount();
+
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.setWaveShiftRatio((float) i / FRAMES);
+            mRenderer.setProgressValue(i);
+            assertSame(mBitmap, mRenderer.render(mBitmap));
+        }
+
+        assertEquals("shaders built", builds, mRenderer.getShaderBuildCount());
+    }
+
+    @Test
+    public void renderAfterRelease_buildsTheShaderAgainOnce() {
+        mRenderer.render(mBitmap);
+        int builds = mRenderer.getShaderBuildCount();
+
+        mRenderer.release();
+        mRenderer.render(mBitmap);
+        mRenderer.render(mBitmap);
+
+        assertEquals("shaders built", builds + 1, mRenderer.getShaderBuildCount());
+    }
+}
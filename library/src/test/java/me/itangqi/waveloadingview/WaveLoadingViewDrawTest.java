@@ -0,0 +1,275 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Matrix;
+import android.os.Build;
+import android.view.View.MeasureSpec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, shadows = {WaveShadows.NoAllocMatrix.class, WaveShadows.AlphaBitmap.class})
+public class WaveLoadingViewDrawTest {
+    private static final int SIZE = 300;
+    private static final int WARM_UP_FRAMES = 200;
+    private static final int FRAMES = 500;
+
+    private WaveLoadingView mView;
+    private RecordingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mView = new WaveLoadingView(RuntimeEnvironment.application);
+        mView.setBorderWidth(4);
+        mView.setTopTitle("Top Title");
+        mView.setCenterTitle("Center Title");
+        mView.setBottomTitle("Bottom Title");
+        mCanvas = new RecordingCanvas();
+    }
+
+    @Test
+    public void onDraw_allocatesNothingPerFrame_forEveryShape() {
+        for (WaveLoadingView.ShapeType shapeType : WaveLoadingView.ShapeType.values()) {
+            mView.setShapeType(shapeType);
+            layout(mView, SIZE, SIZE);
+
+            drawFrames(WARM_UP_FRAMES);
+            long allocated = measureAllocations(FRAMES);
+
+            assertEquals(shapeType + " allocated in onDraw", 0, allocated);
+        }
+    }
+
+    @Test
+    public void onDraw_allocatesNothingPerFrame_forPathShapes() {
+        WaveShape[] shapes = {WaveShapes.heart(), WaveShapes.droplet(), WaveShapes.battery()};
+        for (WaveShape shape : shapes) {
+            mView.setShape(shape);
+            layout(mView, SIZE, SIZE);
+
+            drawFrames(WARM_UP_FRAMES);
+            long allocated = measureAllocations(FRAMES);
+
+            assertEquals(shape + " allocated in onDraw", 0, allocated);
+        }
+    }
+
+    @Test
+    public void layeredRendering_onlyDrawsTheWaveAndTwoLayersPerFrame() {
+        mView.setLayeredRendering(true);
+        for (WaveLoadingView.ShapeType shapeType : WaveLoadingView.ShapeType.values()) {
+            mView.setShapeType(shapeType);
+            layout(mView, SIZE, SIZE);
+            // Records the layers.
+            mView.onDraw(mCanvas);
+
+            mCanvas.drawCount = 0;
+            drawFrames(10);
+
+            assertEquals(shapeType + " draw calls", 3 * 10, mCanvas.drawCount);
+        }
+    }
+
+    @Test
+    public void waveLayers_drawOncePerGroup_withoutAllocating() {
+        mView.setLayeredRendering(true);
+        // The two tinted layers move together and share one bitmap, the colored one does not.
+        mView.setWaveLayers(
+                WaveLayer.colored(1.2f, 1.5f, 0f, 0.5f, 0x4D2196F3),
+                WaveLayer.tinted(1f, 1f, 0f, 1f, 0.3f),
+                WaveLayer.tinted(1f, 1f, 0.25f, 1f, 1f));
+        layout(mView, SIZE, SIZE);
+        mView.onDraw(mCanvas);
+
+        mCanvas.drawCount = 0;
+        drawFrames(10);
+        assertEquals("draw calls", (2 + 2) * 10, mCanvas.drawCount);
+
+        drawFrames(WARM_UP_FRAMES);
+        assertEquals("allocated in onDraw", 0, measureAllocations(FRAMES));
+    }
+
+    @Test
+    public void bakedFrames_drawOneBitmapPerFrame_untilAPropertyChanges() {
+        mView.setBakedFrames(12);
+        layout(mView, SIZE, SIZE);
+        // A live frame to see the gauge hold still.
+        drawFrames(1);
+        // Then one baked frame per pass, still drawn live.
+        for (int i = 0; i < 12; i++) {
+            mCanvas.drawCount = 0;
+            mView.onDraw(mCanvas);
+            assertTrue("drawn live while baking", mCanvas.drawCount > 1);
+        }
+
+        mCanvas.drawCount = 0;
+        for (int i = 0; i < 10; i++) {
+            mView.setWaveShiftRatio(i / 10f);
+            mView.onDraw(mCanvas);
+        }
+        assertEquals("draw calls", 10, mCanvas.drawCount);
+
+        mView.setWaveColor(0xFF2196F3);
+        mCanvas.drawCount = 0;
+        mView.onDraw(mCanvas);
+        assertTrue("drawn live after a change", mCanvas.drawCount > 1);
+    }
+
+    @Test
+    public void bakedFrames_keepTheHardwareLayers_beforeMarshmallow() {
+        // Hardware canvases before M draw the static layers from a bitmap, the atlas records
+        // them into a picture.
+        int sdk = Build.VERSION.SDK_INT;
+        ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.LOLLIPOP_MR1);
+        try {
+            mCanvas.hardwareAccelerated = true;
+            mView.setLayeredRendering(true);
+            mView.setBakedFrames(12);
+            layout(mView, SIZE, SIZE);
+            drawFrames(14);
+
+            // A new generation: a live frame records the bitmaps, the first baking pass the
+            // pictures. The other passes reuse both, rather than one replacing the other.
+            mView.setBorderColor(0xFF2196F3);
+            drawFrames(2);
+            long allocated = measureAllocations(new Runnable() {
+                @Override
+                public void run() {
+                    drawFrames(12);
+                }
+            });
+            assertTrue("allocated " + allocated + " bytes", allocated < SIZE * SIZE * 4);
+        } finally {
+            ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", sdk);
+        }
+    }
+
+    @Test
+    public void editBatch_rebuildsTheWaveShaderOnce() {
+        layout(mView, SIZE, SIZE);
+        mView.onDraw(mCanvas);
+        int builds = mView.getShaderBuildCount();
+
+        mView.edit()
+                .setWaveLayers(WaveLayer.tinted(1f, 1f, 0f, 1f, 1f), WaveLayer.tinted(0.5f, 1f, 0.25f, 1f, 0.5f))
+                .setAmplitudeRatio(80)
+                .setWaveLengthRatio(0.5f)
+                .setWaveColor(0xFF2196F3)
+                .setShapeType(WaveLoadingView.ShapeType.SQUARE)
+                .apply();
+        mView.onDraw(mCanvas);
+
+        assertEquals("shaders built", builds + 1, mView.getShaderBuildCount());
+    }
+
+    @Test
+    public void editStyle_replacesAShapeSetBefore() {
+        WaveStyle style = new WaveStyle.Builder().setShapeType(WaveLoadingView.ShapeType.SQUARE).build();
+        mView.edit().setShape(WaveShapes.heart()).setStyle(style).apply();
+
+        assertEquals(WaveLoadingView.ShapeType.SQUARE.ordinal(), mView.getShapeType());
+    }
+
+    @Test
+    public void titles_areClippedToACustomShape_only() {
+        layout(mView, SIZE, SIZE);
+        mView.onDraw(mCanvas);
+        assertNull("clipped a built-in shape", mCanvas.clipPath);
+
+        mView.setShape(WaveShapes.heart());
+        layout(mView, SIZE, SIZE);
+        mView.onDraw(mCanvas);
+        assertSame(mView.getShape().getClipPath(), mCanvas.clipPath);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setShape_rejectsNull() {
+        mView.setShape(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void styleShapeType_rejectsNull() {
+        new WaveStyle.Builder().setShapeType(null);
+    }
+
+    @Test
+    public void waveShader_followsTheWaterLevelAndShift() {
+        layout(mView, SIZE, SIZE);
+        mView.setProgressValue(50, false);
+        mView.setWaveShiftRatio(0.25f);
+        mView.onDraw(mCanvas);
+        float[] half = waveShaderMatrix();
+
+        mView.setProgressValue(80, false);
+        mView.onDraw(mCanvas);
+        float[] high = waveShaderMatrix();
+
+        // One period over the width, a quarter of it along, level.
+        assertEquals(1f, half[Matrix.MSCALE_X], 1e-4f);
+        assertEquals(0.25f * SIZE, half[Matrix.MTRANS_X], 1e-3f);
+        assertEquals(0f, half[Matrix.MSKEW_Y], 0f);
+        // The bitmap holds waves of amplitude 0.1, the default amplitude is half that.
+        assertEquals(0.5f, half[Matrix.MSCALE_Y], 1e-4f);
+        // The surface rises with the level, and only moves.
+        assertEquals(-0.3f * SIZE, high[Matrix.MTRANS_Y] - half[Matrix.MTRANS_Y], 1e-3f);
+        assertEquals(half[Matrix.MTRANS_X], high[Matrix.MTRANS_X], 0f);
+    }
+
+    private float[] waveShaderMatrix() {
+        Matrix matrix = new Matrix();
+        assertTrue("wave drawn with a shader", mCanvas.shaderPaint.getShader().getLocalMatrix(matrix));
+        float[] values = new float[9];
+        matrix.getValues(values);
+        return values;
+    }
+
+    private void drawFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            mView.onDraw(mCanvas);
+        }
+    }
+
+    private long measureAllocations(final int frames) {
+        return measureAllocations(new Runnable() {
+            @Override
+            public void run() {
+                drawFrames(frames);
+            }
+        });
+    }
+
+    /**
+     * @return The bytes the current thread allocated while running frames.
+     */
+    static long measureAllocations(Runnable frames) {
+        // Reading the counter may allocate itself, measure that first.
+        long start = allocatedBytes();
+        long readCost = allocatedBytes() - start;
+        long before = allocatedBytes();
+        frames.run();
+        return allocatedBytes() - before - readCost;
+    }
+
+    static void layout(WaveLoadingView view, int width, int height) {
+        view.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,268 @@
+package me.itangqi.waveloadingview;
+
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+
+import static me.itangqi.waveloadingview.WaveLoadingViewDrawTest.layout;
+import static me.itangqi.waveloadingview.WaveLoadingViewDrawTest.measureAllocations;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the view through simulated frames, to keep what makes a frame cheap from regressing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, shadows = {WaveShadows.NoAllocMatrix.class, WaveShadows.AlphaBitmap.class})
+public class WaveLoadingViewFrameTest {
+    private static final int SIZE = 300;
+    private static final long FRAME_MILLIS = 16;
+    private static final int WARM_UP_FRAMES = 200;
+    private static final int FRAMES = 500;
+    // Longest a level change may take, in frames.
+    private static final int MAX_ANIMATION_FRAMES = 1000;
+
+    private FakeTimeSource mClock;
+    private WaveLoadingView mView;
+    private RecordingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        // Robolectric runs all frames of an animator at once unless they are spaced out.
+        ShadowChoreographer.setPostCallbackDelay((int) FRAME_MILLIS);
+        mClock = new FakeTimeSource();
+        mView = new WaveLoadingView(RuntimeEnvironment.application);
+        mView.setTimeSource(mClock);
+        mView.setAnimationMode(WaveLoadingView.AnimationMode.FRAME_TIME);
+        mView.setTopTitle("Top Title");
+        mView.setCenterTitle("Center Title");
+        mView.setBottomTitle("Bottom Title");
+        mCanvas = new RecordingCanvas();
+    }
+
+    @After
+    public void tearDown() {
+        ShadowChoreographer.setPostCallbackDelay(0);
+    }
+
+    @Test
+    public void frames_followTheInjectedClock() {
+        mView.setAnimDuration(1000);
+        layout(mView, SIZE, SIZE);
+        mView.startAnimation();
+        mView.onDraw(mCanvas);
+        assertTrue("schedules its next frame", mClock.hasPendingFrame());
+
+        mClock.advance(250);
+        mView.onDraw(mCanvas);
+        assertEquals(0.25f, mView.getWaveShiftRatio(), 1e-6f);
+
+        mView.cancelAnimation();
+        assertFalse("stops scheduling", mClock.hasPendingFrame());
+    }
+
+    @Test
+    public void animation_allocatesNothing_andRebuildsNoShader() {
+        layout(mView, SIZE, SIZE);
+        mView.startAnimation();
+        runFrames(WARM_UP_FRAMES);
+        int builds = mView.getShaderBuildCount();
+
+        long allocated = measureAllocations(new Runnable() {
+            @Override
+            public void run() {
+                runFrames(FRAMES);
+            }
+        });
+
+        assertEquals("allocated while animating", 0, allocated);
+        assertEquals("shaders built while animating", builds, mView.getShaderBuildCount());
+    }
+
+    @Test
+    public void sizeChange_rebuildsTheShaderOnce() {
+        layout(mView, SIZE, SIZE);
+        mView.startAnimation();
+        runFrames(10);
+
+        int[] sizes = {200, 400, SIZE, SIZE / 2};
+        for (int size : sizes) {
+            int builds = mView.getShaderBuildCount();
+            layout(mView, size, size);
+            runFrames(10);
+            assertEquals("shaders built for " + size, builds + 1, mView.getShaderBuildCount());
+        }
+
+        int builds = mView.getShaderBuildCount();
+        layout(mView, SIZE / 2, SIZE / 2);
+        runFrames(10);
+        assertEquals("shaders built for the same size", builds, mView.getShaderBuildCount());
+    }
+
+    @Test
+    public void sloshing_keepsToTheFrameCap_andSettlesWhileHidden() {
+        layout(mView, SIZE, SIZE);
+        mView.setSloshing(true);
+        mView.setTargetFrameRate(30);
+        mView.setProgressValue(80);
+        assertTrue("stepping", mView.isSloshAnimating());
+
+        float level = mView.getWaterLevelRatio();
+        mClock.advance(FRAME_MILLIS);
+        assertEquals("stepped between capped frames", level, mView.getWaterLevelRatio(), 0f);
+        mClock.advance(FRAME_MILLIS * 2);
+        assertTrue("stepped on the capped frame", mView.getWaterLevelRatio() != level);
+
+        // Another activity covers ours.
+        mView.onWindowVisibilityChanged(View.GONE);
+        assertFalse("stepping while hidden", mView.isSloshAnimating());
+        assertEquals(0.8f, mView.getWaterLevelRatio(), 0f);
+    }
+
+    @Test
+    public void repeatedProgressChanges_retargetOneAnimator() {
+        WaveLoadingView view = new WaveLoadingView(RuntimeEnvironment.application);
+        layout(view, SIZE, SIZE);
+        for (int i = 0; i < 100; i++) {
+            view.setProgressValue(i);
+            ShadowLooper.idleMainLooper(FRAME_MILLIS);
+            assertTrue("animating", view.isProgressAnimating());
+        }
+
+        for (int i = 0; i < MAX_ANIMATION_FRAMES && view.isProgressAnimating(); i++) {
+            ShadowLooper.idleMainLooper(FRAME_MILLIS);
+        }
+        assertFalse("animator left running", view.isProgressAnimating());
+        assertEquals(0.99f, view.getWaterLevelRatio(), 1e-6f);
+        // An animator of an earlier change would still move the level.
+        ShadowLooper.idleMainLooper(100 * FRAME_MILLIS);
+        assertEquals(0.99f, view.getWaterLevelRatio(), 1e-6f);
+    }
+
+    @Test
+    public void repeatedSloshes_stepOneSimulation_untilTheWaterRests() {
+        layout(mView, SIZE, SIZE);
+        mView.setSloshing(true);
+        for (int i = 0; i < 100; i++) {
+            mView.setProgressValue(i % 2 == 0 ? 20 : 80);
+            mClock.advance(FRAME_MILLIS);
+            assertTrue("stepping", mView.isSloshAnimating());
+        }
+
+        for (int i = 0; i < MAX_ANIMATION_FRAMES && mView.isSloshAnimating(); i++) {
+            mClock.advance(FRAME_MILLIS);
+        }
+        assertFalse("stepping at rest", mView.isSloshAnimating());
+        assertFalse("frames left pending", mClock.hasPendingFrame());
+        assertEquals(0.8f, mView.getWaterLevelRatio(), 0f);
+    }
+
+    @Test
+    public void resumeWhileHidden_animatesOnceVisibleAgain() {
+        final boolean[] visible = {true};
+        WaveLoadingView view = new WaveLoadingView(RuntimeEnvironment.application) {
+            @Override
+            boolean isShownToUser() {
+                return visible[0];
+            }
+        };
+        layout(view, SIZE, SIZE);
+        view.startAnimation();
+        assertTrue("animating while shown", view.isWaveShiftAnimating());
+
+        visible[0] = false;
+        view.onWindowVisibilityChanged(View.GONE);
+        view.pauseAnimation();
+        view.resumeAnimation();
+        assertFalse("animating while hidden", view.isWaveShiftAnimating());
+
+        visible[0] = true;
+        view.onWindowVisibilityChanged(View.VISIBLE);
+        assertTrue("animating once visible again", view.isWaveShiftAnimating());
+    }
+
+    @Test
+    public void sharedClock_neverHoldsADetachedView() {
+        // The clock reposts itself every frame, which Robolectric would otherwise run at once.
+        ShadowLooper.pauseMainLooper();
+        WaveLoadingView view = new WaveLoadingView(RuntimeEnvironment.application) {
+            @Override
+            boolean isShownToUser() {
+                return true;
+            }
+        };
+        view.setAnimationMode(WaveLoadingView.AnimationMode.SHARED_CLOCK);
+        WaveAnimationClock clock = WaveAnimationClock.getInstance();
+        view.startAnimation();
+        assertFalse("registered before attaching", clock.isRegistered(view));
+
+        view.onAttachedToWindow();
+        assertTrue("registered once attached", clock.isRegistered(view));
+
+        view.onDetachedFromWindow();
+        assertFalse("registered after detaching", clock.isRegistered(view));
+        view.startAnimation();
+        view.pauseAnimation();
+        view.resumeAnimation();
+        assertFalse("registered by a detached start", clock.isRegistered(view));
+    }
+
+    @Test
+    public void adaptiveFrameRate_followsLateFrames_andStepsUpLaterAfterAFalseStart() {
+        // Adaptive mode judges a window of 60 frames at a time.
+        int window = 60;
+        long dropping = 50;
+        long halfRate = 33;
+        // Adaptive mode checks whether the view is shown, which needs a window.
+        mView = new WaveLoadingView(RuntimeEnvironment.application) {
+            @Override
+            boolean isShownToUser() {
+                return true;
+            }
+        };
+        mView.setTimeSource(mClock);
+        mView.setAnimationMode(WaveLoadingView.AnimationMode.FRAME_TIME);
+        mView.setAdaptiveFrameRate(true);
+        layout(mView, SIZE, SIZE);
+        mView.startAnimation();
+        mView.onDraw(mCanvas);
+
+        runFrames(window, dropping);
+        assertEquals("half rate", 1, mView.getDegradeLevel());
+        runFrames(window, dropping);
+        assertEquals("no back wave", 2, mView.getDegradeLevel());
+
+        runFrames(window, halfRate);
+        assertEquals("stepped up after one window", 2, mView.getDegradeLevel());
+        runFrames(window, halfRate);
+        assertEquals("stepped up after two", 1, mView.getDegradeLevel());
+
+        // Still too slow for the back wave: it takes twice as long to try again.
+        runFrames(window, dropping);
+        assertEquals(2, mView.getDegradeLevel());
+        runFrames(3 * window, halfRate);
+        assertEquals("stepped up after three windows", 2, mView.getDegradeLevel());
+        runFrames(window, halfRate);
+        assertEquals("stepped up after four", 1, mView.getDegradeLevel());
+    }
+
+    private void runFrames(int frames) {
+        runFrames(frames, FRAME_MILLIS);
+    }
+
+    private void runFrames(int frames, long frameMillis) {
+        for (int i = 0; i < frames; i++) {
+            mClock.advance(frameMillis);
+            mView.onDraw(mCanvas);
+        }
+    }
+}
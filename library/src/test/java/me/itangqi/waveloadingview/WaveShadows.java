@@ -0,0 +1,97 @@
+package me.itangqi.waveloadingview;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowBitmap;
+import org.robolectric.shadows.ShadowMatrix;
+
+import java.nio.Buffer;
+
+/**
+ * Shadows that keep Robolectric's own bookkeeping out of allocation measurements.
+ */
+public class WaveShadows {
+
+    /**
+     * Robolectric's matrix allocates a new matrix object on every setValues, which would hide
+     * the allocations of the view itself. This one keeps the values in place, so tests can
+     * still read back what the view set. Everything else is Robolectric's.
+     */
+    @Implements(Matrix.class)
+    public static class NoAllocMatrix extends ShadowMatrix {
+        private final float[] mValues = new float[9];
+        private boolean mHasValues;
+
+        @Implementation
+        @Override
+        public void setValues(float[] values) {
+            System.arraycopy(values, 0, mValues, 0, mValues.length);
+            mHasValues = true;
+        }
+
+        @Implementation
+        @Override
+        public void getValues(float[] values) {
+            if (mHasValues) {
+                System.arraycopy(mValues, 0, values, 0, mValues.length);
+            } else {
+                super.getValues(values);
+            }
+        }
+
+        @Implementation
+        @Override
+        public void set(Matrix src) {
+            super.set(src);
+            NoAllocMatrix source = src == null ? null : (NoAllocMatrix) Shadow.extract(src);
+            mHasValues = source != null && source.mHasValues;
+            if (mHasValues) {
+                System.arraycopy(source.mValues, 0, mValues, 0, mValues.length);
+            }
+        }
+
+        @Implementation
+        @Override
+        public boolean isIdentity() {
+            if (!mHasValues) {
+                return super.isIdentity();
+            }
+            for (int i = 0; i < mValues.length; i++) {
+                if (mValues[i] != (i % 4 == 0 ? 1 : 0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Implementation
+        @Override
+        public void reset() {
+            super.reset();
+            mHasValues = false;
+        }
+    }
+
+    /**
+     * Robolectric only copies 4 byte pixels, the wave bitmap is an alpha mask. Its bitmaps
+     * have no pixel buffer either, which the framework needs to reconfigure them.
+     */
+    @Implements(Bitmap.class)
+    public static class AlphaBitmap extends ShadowBitmap {
+        @Implementation
+        @Override
+        public void copyPixelsFromBuffer(Buffer src) {
+        }
+
+        @Implementation
+        public void reconfigure(int width, int height, Bitmap.Config config) {
+            setWidth(width);
+            setHeight(height);
+            setConfig(config);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package me.itangqi.waveloadingview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WaveSloshTest {
+    private static final long FRAME_MILLIS = 16;
+    private static final long MAX_SETTLE_MILLIS = 10000;
+
+    @Test
+    public void retarget_tiltsTheSurfaceAndSettlesAtTheTarget() {
+        WaveSlosh slosh = new WaveSlosh();
+        slosh.snap(0.2f);
+        slosh.retarget(0.2f, 0.8f, 0);
+
+        float maxTilt = 0;
+        long now = 0;
+        while (slosh.advance(now += FRAME_MILLIS)) {
+            maxTilt = Math.max(maxTilt, Math.abs(slosh.getTilt()));
+            assertTrue("settles in time", now < MAX_SETTLE_MILLIS);
+        }
+
+        assertTrue("tilted", maxTilt > 0.1f);
+        assertTrue(slosh.isResting());
+        assertEquals(0.8f, slosh.getLevel(), 0f);
+        assertEquals(0f, slosh.getTilt(), 0f);
+        assertFalse("steps nothing at rest", slosh.advance(now + FRAME_MILLIS));
+    }
+
+    @Test
+    public void advance_doesNotDependOnTheFrameRate() {
+        WaveSlosh fast = new WaveSlosh();
+        WaveSlosh slow = new WaveSlosh();
+        fast.retarget(0f, 0.5f, 0);
+        slow.retarget(0f, 0.5f, 0);
+
+        for (long now = 8; now <= 480; now += 8) {
+            fast.advance(now);
+            if (now % 32 == 0) {
+                slow.advance(now);
+                assertEquals(fast.getLevel(), slow.getLevel(), 0f);
+                assertEquals(fast.getTilt(), slow.getTilt(), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void retarget_whileMoving_keepsTheLevelContinuous() {
+        WaveSlosh slosh = new WaveSlosh();
+        slosh.retarget(0f, 1f, 0);
+        slosh.advance(200);
+        float level = slosh.getLevel();
+
+        slosh.retarget(level, 0.3f, 200);
+
+        assertEquals(level, slosh.getLevel(), 1e-6f);
+    }
+}
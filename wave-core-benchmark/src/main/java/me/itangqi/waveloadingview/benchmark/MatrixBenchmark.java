@@ -0,0 +1,46 @@
+package me.itangqi.waveloadingview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import me.itangqi.waveloadingview.core.WaveMatrix;
+
+/**
+ * The per-frame work of every wave group: its shift and shader matrix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+    private static final int SIZE = 300;
+
+    private final float[] mValues = new float[WaveMatrix.VALUE_COUNT];
+    private int mCycles;
+    private float mShiftRatio;
+
+    @Benchmark
+    public float[] frame() {
+        mShiftRatio += 0.01f;
+        if (mShiftRatio >= 1f) {
+            mShiftRatio -= 1f;
+            mCycles = (mCycles + 1) % 1000;
+        }
+        float period = SIZE;
+        float shift = WaveMatrix.layerShift(mCycles, mShiftRatio, 1.5f);
+        WaveMatrix.compute(mValues, period / SIZE, 1f, SIZE / 2f,
+                shift * period, -0.1f * SIZE, SIZE / 2f - 16, 0.05f, SIZE / 2f);
+        return mValues;
+    }
+}
@@ -0,0 +1,80 @@
+package me.itangqi.waveloadingview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import me.itangqi.waveloadingview.core.WaveRasterizer;
+
+/**
+ * Rasterizing the wave band of a gauge, which happens once per size and wave settings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterizeBenchmark {
+    @Param({"100", "300", "1080"})
+    public int size;
+
+    @Param({"1", "2"})
+    public int waves;
+
+    private byte[] mMask;
+    private int mStride;
+    private int mStripTop;
+    private int mStripHeight;
+    private float[] mWaves;
+    private final float[] mSurfaces = new float[2];
+
+    @Setup
+    public void setUp() {
+        float amplitude = size * 0.05f;
+        mStride = (size + 3) & ~3;
+        mStripTop = (int) (size / 2f - amplitude) - 1;
+        mStripHeight = (int) Math.ceil(2 * amplitude) + 2;
+        mMask = new byte[mStride * mStripHeight];
+        // The default gauge: a faint back wave a quarter period behind the front one.
+        mWaves = new float[]{amplitude, 0.25f, 0.3f, amplitude, 0f, 1f};
+        if (waves == 1) {
+            mWaves = new float[]{amplitude, 0f, 1f};
+        }
+    }
+
+    @Benchmark
+    public byte[] rasterize() {
+        WaveRasterizer.rasterize(mMask, mStride, size, mStripTop, mStripHeight, size / 2f,
+                mWaves, waves, mSurfaces);
+        return mMask;
+    }
+
+    @Benchmark
+    public float sineTable() {
+        float sum = 0;
+        for (int x = 0; x < size; x++) {
+            sum += WaveRasterizer.sin((float) x / size);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float mathSin() {
+        float sum = 0;
+        for (int x = 0; x < size; x++) {
+            sum += (float) Math.sin(2 * Math.PI * x / size);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+package me.itangqi.waveloadingview.core;
+
+/**
+ * Vertices of the built-in shapes that are not plain rectangles or circles.
+ */
+public final class WaveGeometry {
+    public static final int NORTH = 0;
+    public static final int SOUTH = 1;
+    public static final int EAST = 2;
+    public static final int WEST = 3;
+
+    private static final double SQRT_3 = Math.sqrt(3.0);
+
+    private WaveGeometry() {
+    }
+
+    /**
+     * EquilateralTriangle, starting from the bottom left corner of the view.
+     *
+     * @param out       Receives x1, y1, x2, y2, x3, y3, at least 6 long.
+     * @param width     The width of triangle
+     * @param height    The height of triangle
+     * @param direction The direction of triangle, {@link #NORTH} to {@link #WEST}
+     * @return Whether there is a triangle, false for an unknown direction or a width or height
+     * that is not positive. If not, out is left untouched.
+     */
+    public static boolean equilateralTriangle(int[] out, int width, int height, int direction) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        int x1 = 0, y1 = height;
+        int x2, y2, x3, y3;
+        if (direction == NORTH) {
+            x2 = x1 + width;
+            y2 = y1;
+            x3 = x1 + (width / 2);
+            y3 = (int) (height - SQRT_3 / 2 * height);
+        } else if (direction == SOUTH) {
+            x2 = x1;
+            y2 = y1 - height;
+            x3 = x1 + width;
+            y3 = y1 - height;
+            x1 = x1 + (width / 2);
+            y1 = (int) (SQRT_3 / 2 * height);
+        } else if (direction == EAST) {
+            x2 = x1;
+            y2 = y1 - height;
+            x3 = (int) (SQRT_3 / 2 * width);
+            y3 = y1 / 2;
+        } else if (direction == WEST) {
+            x2 = x1 + width;
+            y2 = y1 - height;
+            x3 = x1 + width;
+            y3 = y1;
+            x1 = (int) (width - SQRT_3 / 2 * width);
+            y1 = y1 / 2;
+        } else {
+            return false;
+        }
+        out[0] = x1;
+        out[1] = y1;
+        out[2] = x2;
+        out[3] = y2;
+        out[4] = x3;
+        out[5] = y3;
+        return true;
+    }
+}
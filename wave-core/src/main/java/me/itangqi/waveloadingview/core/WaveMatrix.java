@@ -0,0 +1,65 @@
+package me.itangqi.waveloadingview.core;
+
+/**
+ * Per-frame shader matrix of a wave bitmap, as the nine values of an android.graphics.Matrix.
+ * <p>
+ * The bitmap holds one period of the wave band. Drawn through this matrix it is stretched to
+ * the wave length and amplitude, shifted along the wave, moved to the water level and tilted
+ * around the middle of the water line: setScale, postTranslate, preTranslate and postSkew
+ * folded into one affine transform.
+ */
+public final class WaveMatrix {
+    public static final int SCALE_X = 0;
+    public static final int SKEW_X = 1;
+    public static final int TRANS_X = 2;
+    public static final int SKEW_Y = 3;
+    public static final int SCALE_Y = 4;
+    public static final int TRANS_Y = 5;
+    public static final int PERSP_0 = 6;
+    public static final int PERSP_1 = 7;
+    public static final int PERSP_2 = 8;
+    public static final int VALUE_COUNT = 9;
+
+    private WaveMatrix() {
+    }
+
+    /**
+     * @param out         Receives the nine values, at least {@link #VALUE_COUNT} long.
+     * @param scaleX      Horizontal stretch, wave length over bitmap width.
+     * @param scaleY      Vertical stretch of the amplitude, around pivotY.
+     * @param pivotY      The water level the bitmap was rasterized at, in view rows.
+     * @param translateX  Shift along the wave, in pixels.
+     * @param translateY  Offset of the water level from pivotY, in pixels.
+     * @param stripTop    The view row of the first bitmap row.
+     * @param tilt        Slope of the surface, in rows per column.
+     * @param tiltPivotX  The column the surface turns around. The row is on the surface and
+     *                    does not move, so it is not needed.
+     */
+    public static void compute(float[] out, float scaleX, float scaleY, float pivotY,
+                               float translateX, float translateY, float stripTop,
+                               float tilt, float tiltPivotX) {
+        // y = scaleY * (row + stripTop - pivotY) + pivotY + translateY, then tilted by
+        // tilt * (x - tiltPivotX).
+        out[SCALE_X] = scaleX;
+        out[SKEW_X] = 0;
+        out[TRANS_X] = translateX;
+        out[SKEW_Y] = tilt * scaleX;
+        out[SCALE_Y] = scaleY;
+        out[TRANS_Y] = scaleY * (stripTop - pivotY) + pivotY + translateY + tilt * (translateX - tiltPivotX);
+        out[PERSP_0] = 0;
+        out[PERSP_1] = 0;
+        out[PERSP_2] = 1;
+    }
+
+    /**
+     * Position within the period of a layer moving speed times as fast as the wave shift.
+     *
+     * @param cycles     Whole periods the shift went through.
+     * @param shiftRatio The wave shift, from 0 to 1.
+     * @return A fraction of the period, from 0 to 1.
+     */
+    public static float layerShift(int cycles, float shiftRatio, float speed) {
+        float shift = (cycles + shiftRatio) * speed;
+        return shift - (float) Math.floor(shift);
+    }
+}
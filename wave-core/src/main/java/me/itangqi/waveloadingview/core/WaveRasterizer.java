@@ -0,0 +1,115 @@
+package me.itangqi.waveloadingview.core;
+
+/**
+ * Rasterizes groups of waves straight into a pixel buffer.
+ * <p>
+ * Column heights come from a shared sine table instead of one {@link Math#sin(double)} per
+ * column, and the surface pixel of every column gets its coverage analytically, which is all
+ * the anti-aliasing a vertical edge needs.
+ */
+public final class WaveRasterizer {
+    // Must be a power of two.
+    private static final int SINE_TABLE_SIZE = 1024;
+    // One extra entry so interpolation never wraps.
+    private static final float[] SINE_TABLE = new float[SINE_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= SINE_TABLE_SIZE; i++) {
+            SINE_TABLE[i] = (float) Math.sin(2.0 * Math.PI * i / SINE_TABLE_SIZE);
+        }
+    }
+
+    private WaveRasterizer() {
+    }
+
+    /**
+     * @param phase Position in the period, in turns. Any value, only the fraction is used.
+     * @return sin(2π * phase)
+     */
+    public static float sin(float phase) {
+        float position = (phase - (float) Math.floor(phase)) * SINE_TABLE_SIZE;
+        int index = (int) position;
+        float fraction = position - index;
+        return SINE_TABLE[index] + (SINE_TABLE[index + 1] - SINE_TABLE[index]) * fraction;
+    }
+
+    /**
+     * Fill {@code mask} with the coverage of one period of a group of waves, in a single pass
+     * over the columns. Wave i is y=A[i]sin(ωx+φ[i])+h.
+     * <p>
+     * All waves of a group are drawn in the same color, so their composite is that color with
+     * the alpha stored here. The color itself is left to the paint.
+     * <p>
+     * Nothing is written when width or stripHeight is not positive, and never more than
+     * stripHeight rows, even where the waves leave the strip.
+     *
+     * @param mask       Alpha bytes, row major, at least stride * stripHeight long.
+     * @param stride     Bytes per row of the mask.
+     * @param width      Width of the mask, which is also the wave length.
+     * @param stripTop   The view row the first mask row stands for.
+     * @param waterLevel Water level of the waves, in view rows.
+     * @param waves      Amplitude in pixels, phase in periods and alpha from 0 to 1 of every
+     *                   wave, from back to front.
+     * @param count      Number of waves.
+     * @param surfaces   Scratch space for count floats.
+     */
+    public static void rasterize(byte[] mask, int stride, int width, int stripTop, int stripHeight,
+                                 float waterLevel, float[] waves, int count, float[] surfaces) {
+        if (width <= 0 || stripHeight <= 0) {
+            return;
+        }
+        // Below every surface, all waves cover the pixel.
+        float solidAlpha = 0;
+        for (int i = 0; i < count; i++) {
+            solidAlpha = over(waves[i * 3 + 2], solidAlpha);
+        }
+        final byte solid = (byte) Math.round(solidAlpha * 255);
+
+        for (int x = 0; x < width; x++) {
+            float phase = (float) x / width;
+            // Surfaces in mask rows.
+            float top = Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                float y = waterLevel + waves[i * 3] * sin(phase + waves[i * 3 + 1]) - stripTop;
+                surfaces[i] = y;
+                top = Math.min(top, y);
+                bottom = Math.max(bottom, y);
+            }
+
+            // Clamped to the strip, waves above or below it only leave it empty or solid.
+            int firstRow = Math.min(stripHeight, Math.max(0, (int) top));
+            int solidRow = Math.max(firstRow, Math.min(stripHeight, (int) Math.ceil(bottom)));
+
+            int index = x;
+            for (int y = 0; y < firstRow; y++, index += stride) {
+                mask[index] = 0;
+            }
+            for (int y = firstRow; y < solidRow; y++, index += stride) {
+                float alpha = 0;
+                for (int i = 0; i < count; i++) {
+                    alpha = over(waves[i * 3 + 2] * coverage(y, surfaces[i]), alpha);
+                }
+                mask[index] = (byte) Math.round(alpha * 255);
+            }
+            for (int y = solidRow; y < stripHeight; y++, index += stride) {
+                mask[index] = solid;
+            }
+        }
+    }
+
+    /**
+     * Source-over of two layers sharing one color only has to blend alpha.
+     */
+    private static float over(float source, float destination) {
+        return source + destination * (1 - source);
+    }
+
+    /**
+     * How much of pixel row y lies below a surface at height surfaceY.
+     */
+    private static float coverage(int y, float surfaceY) {
+        float covered = y + 1 - surfaceY;
+        return covered <= 0 ? 0 : covered >= 1 ? 1 : covered;
+    }
+}
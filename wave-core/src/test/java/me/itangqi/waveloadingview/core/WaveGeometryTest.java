@@ -0,0 +1,36 @@
+package me.itangqi.waveloadingview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WaveGeometryTest {
+
+    @Test
+    public void equilateralTriangle_pointsTheApexInItsDirection() {
+        int[] out = new int[6];
+        assertTrue(WaveGeometry.equilateralTriangle(out, 100, 100, WaveGeometry.NORTH));
+        assertArrayEquals(new int[]{0, 100, 100, 100, 50, 13}, out);
+
+        assertTrue(WaveGeometry.equilateralTriangle(out, 100, 100, WaveGeometry.SOUTH));
+        assertArrayEquals(new int[]{50, 86, 0, 0, 100, 0}, out);
+
+        assertTrue(WaveGeometry.equilateralTriangle(out, 100, 100, WaveGeometry.EAST));
+        assertArrayEquals(new int[]{0, 100, 0, 0, 86, 50}, out);
+
+        assertTrue(WaveGeometry.equilateralTriangle(out, 100, 100, WaveGeometry.WEST));
+        assertArrayEquals(new int[]{13, 50, 100, 0, 100, 100}, out);
+    }
+
+    @Test
+    public void equilateralTriangle_leavesOutAlone_withoutATriangle() {
+        int[] out = {1, 2, 3, 4, 5, 6};
+        assertFalse("unknown direction", WaveGeometry.equilateralTriangle(out, 100, 100, 4));
+        assertFalse("no width", WaveGeometry.equilateralTriangle(out, 0, 100, WaveGeometry.NORTH));
+        assertFalse("no height", WaveGeometry.equilateralTriangle(out, 100, 0, WaveGeometry.NORTH));
+        assertFalse("negative size", WaveGeometry.equilateralTriangle(out, -1, -1, WaveGeometry.SOUTH));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6}, out);
+    }
+}
@@ -0,0 +1,39 @@
+package me.itangqi.waveloadingview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WaveMatrixTest {
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void compute_matchesTheSteps_ofTheRenderer() {
+        float sx = 1.5f, sy = 0.8f, py = 150f, tx = 42f, ty = -30f, stripTop = 120f;
+        float tilt = 0.1f, tiltPivotX = 150f;
+        float[] values = new float[WaveMatrix.VALUE_COUNT];
+        WaveMatrix.compute(values, sx, sy, py, tx, ty, stripTop, tilt, tiltPivotX);
+
+        // A point of the bitmap through setScale, postTranslate, preTranslate and postSkew.
+        float u = 17f, v = 9f;
+        float x = sx * u + tx;
+        float y = sy * (v + stripTop - py) + py + ty;
+        y += tilt * (x - tiltPivotX);
+
+        assertEquals(x, values[WaveMatrix.SCALE_X] * u + values[WaveMatrix.SKEW_X] * v
+                + values[WaveMatrix.TRANS_X], DELTA);
+        assertEquals(y, values[WaveMatrix.SKEW_Y] * u + values[WaveMatrix.SCALE_Y] * v
+                + values[WaveMatrix.TRANS_Y], DELTA);
+        assertArrayEquals(new float[]{0, 0, 1}, new float[]{values[WaveMatrix.PERSP_0],
+                values[WaveMatrix.PERSP_1], values[WaveMatrix.PERSP_2]}, 0);
+    }
+
+    @Test
+    public void layerShift_wrapsSeamlessly_acrossCycles() {
+        assertEquals(0.5f, WaveMatrix.layerShift(3, 0.25f, 2f), DELTA);
+        assertEquals(0.75f, WaveMatrix.layerShift(0, 0.5f, 1.5f), DELTA);
+        // The end of one cycle meets the start of the next.
+        assertEquals(WaveMatrix.layerShift(2, 0.9999f, 1.5f), WaveMatrix.layerShift(3, 0f, 1.5f), DELTA);
+    }
+}
@@ -0,0 +1,102 @@
+package me.itangqi.waveloadingview.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class WaveRasterizerTest {
+    private static final int WIDTH = 64;
+    private static final int STRIDE = 64;
+    private static final int STRIP_HEIGHT = 40;
+
+    @Test
+    public void sin_followsMathSin_overAndBeyondOnePeriod() {
+        for (float phase = -2f; phase <= 2f; phase += 0.01f) {
+            assertEquals("at " + phase, Math.sin(2 * Math.PI * phase), WaveRasterizer.sin(phase), 1e-4);
+        }
+    }
+
+    @Test
+    public void rasterize_coversThePixelsBelowEverySurface() {
+        float waterLevel = 120.5f;
+        int stripTop = 100;
+        float[] waves = {8f, 0.25f, 1f};
+        byte[] mask = rasterize(stripTop, waterLevel, waves, 1);
+
+        for (int x = 0; x < WIDTH; x++) {
+            float surface = waterLevel + 8f * WaveRasterizer.sin((float) x / WIDTH + 0.25f) - stripTop;
+            for (int y = 0; y < STRIP_HEIGHT; y++) {
+                float coverage = Math.max(0, Math.min(1, y + 1 - surface));
+                assertEquals("at " + x + ", " + y, Math.round(coverage * 255), alpha(mask, x, y), 1);
+            }
+        }
+    }
+
+    @Test
+    public void rasterize_blendsAGroup_likeSourceOver() {
+        // Two flat waves of half alpha, one half a row above the other.
+        float[] waves = {0f, 0f, 0.5f, 0f, 0f, 0.5f};
+        byte[] mask = rasterize(0, 20.5f, waves, 2);
+
+        for (int x = 0; x < WIDTH; x++) {
+            assertEquals("above the band", 0, alpha(mask, x, 19));
+            // Half covered by both: 0.25 over 0.25.
+            assertEquals("surface row", Math.round(0.4375f * 255), alpha(mask, x, 20));
+            // Covered by both: 0.5 over 0.5.
+            assertEquals("below the band", Math.round(0.75f * 255), alpha(mask, x, 21));
+            assertEquals("bottom row", Math.round(0.75f * 255), alpha(mask, x, STRIP_HEIGHT - 1));
+        }
+    }
+
+    @Test
+    public void rasterize_staysInTheStrip_whenTheWavesLeaveIt() {
+        float[] waves = {4f, 0f, 1f};
+        // The row past the strip must never be written.
+        byte[] above = rasterize(0, -50f, waves, 1);
+        byte[] below = rasterize(0, STRIP_HEIGHT + 50f, waves, 1);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < STRIP_HEIGHT; y++) {
+                assertEquals("under waves above the strip", 255, alpha(above, x, y));
+                assertEquals("over waves below the strip", 0, alpha(below, x, y));
+            }
+            assertEquals("past the strip", 7, above[STRIP_HEIGHT * STRIDE + x]);
+            assertEquals("past the strip", 7, below[STRIP_HEIGHT * STRIDE + x]);
+        }
+    }
+
+    @Test
+    public void rasterize_writesNothing_withoutWidthOrHeight() {
+        byte[] mask = newMask();
+        float[] waves = {4f, 0f, 1f};
+        float[] surfaces = new float[1];
+        WaveRasterizer.rasterize(mask, STRIDE, 0, 0, STRIP_HEIGHT, 20f, waves, 1, surfaces);
+        WaveRasterizer.rasterize(mask, STRIDE, -1, 0, STRIP_HEIGHT, 20f, waves, 1, surfaces);
+        WaveRasterizer.rasterize(mask, STRIDE, WIDTH, 0, 0, 20f, waves, 1, surfaces);
+        WaveRasterizer.rasterize(mask, STRIDE, WIDTH, 0, -1, 20f, waves, 1, surfaces);
+
+        byte[] untouched = newMask();
+        assertEquals(Arrays.toString(untouched), Arrays.toString(mask));
+    }
+
+    private static byte[] rasterize(int stripTop, float waterLevel, float[] waves, int count) {
+        byte[] mask = newMask();
+        WaveRasterizer.rasterize(mask, STRIDE, WIDTH, stripTop, STRIP_HEIGHT, waterLevel, waves,
+                count, new float[count]);
+        return mask;
+    }
+
+    /**
+     * One row more than the strip, filled with a marker the rasterizer never writes.
+     */
+    private static byte[] newMask() {
+        byte[] mask = new byte[STRIDE * (STRIP_HEIGHT + 1)];
+        Arrays.fill(mask, (byte) 7);
+        return mask;
+    }
+
+    private static int alpha(byte[] mask, int x, int y) {
+        return mask[y * STRIDE + x] & 0xFF;
+    }
+}